@@ -0,0 +1,38 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//Entry point of benchmarks.jar. Accepts the usual JMH command line but always attaches the GC profiler
+//so allocation rates are reported, and writes JSON results to jmh-result.json unless -rf/-rff say otherwise.
+//Keep the JSON of each version around and compare them to see what a change did.
+public class BenchmarkRunner {
+	static final String DEFAULT_RESULT="jmh-result.json";
+
+	public static void main(String[] args) throws RunnerException, IOException {
+		CommandLineOptions cmd;
+		try {
+			cmd=new CommandLineOptions(args);
+		}catch(CommandLineOptionException e) {
+			System.err.println("Error parsing command line: "+e.getMessage());
+			System.exit(64);
+			return;
+		}
+		if(cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder options=new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class);
+		if(!cmd.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+		if(!cmd.getResult().hasValue()) options.result(DEFAULT_RESULT);
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,51 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Executes one shared compiled Program from every available core, each thread with its own Interpreter.
+//Compare the throughput against a run with -t 1 to see how well executions scale.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5,time=2)
+@Measurement(iterations=5,time=2)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ConcurrentBenchmark {
+	@Param({"fib","binary_trees","method_call","zoo"})
+	String workload;
+
+	private Program program;
+	private PrintStream stdout;
+
+	@Setup
+	public void setup() {
+		stdout=Workloads.silenceOutput();
+		program=Workloads.compile(Workloads.load(workload));
+	}
+	@TearDown
+	public void tearDown() {
+		System.setOut(stdout);
+	}
+	@Benchmark
+	public Interpreter execute() {
+		Interpreter interpreter=new Interpreter(new ErrorReporter(System.err));
+		interpreter.interpret(program);
+		return interpreter;
+	}
+}
@@ -0,0 +1,63 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//What a debugger costs when it isn't stopping anything, on the closure engine it patches.
+//none runs without a debugger, attached with one that has no breakpoints and breakpoint with one on the workload's
+//last line, which runs once after the hot part is done. All three should be the same.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5,time=2)
+@Measurement(iterations=5,time=2)
+@Fork(1)
+public class DebuggerBenchmark {
+	@Param({"fib","method_call","helpers"})
+	String workload;
+	@Param({"none","attached","breakpoint"})
+	String debugger;
+
+	private Program program;
+	private int lastLine;
+	private PrintStream stdout;
+
+	@Setup
+	public void setup() {
+		stdout=Workloads.silenceOutput();
+		String source=Workloads.load(workload);
+		program=Workloads.compile(source);
+		lastLine=source.strip().split("\n").length;
+	}
+	@TearDown
+	public void tearDown() {
+		System.setOut(stdout);
+	}
+	@Benchmark
+	public Interpreter run() {
+		Interpreter interpreter=new Interpreter(new ErrorReporter(System.err));
+		interpreter.engine=Engine.CLOSURE;
+		Debugger attached=null;
+		if(!debugger.equals("none")) {
+			attached=new Debugger(suspension->Debugger.Resume.CONTINUE);
+			if(debugger.equals("breakpoint")) attached.setBreakpoint(lastLine);
+			interpreter.debug(attached);
+		}
+		interpreter.interpret(program);
+		if(attached!=null) attached.detach();
+		return interpreter;
+	}
+}
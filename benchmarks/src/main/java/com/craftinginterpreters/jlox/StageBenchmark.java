@@ -0,0 +1,91 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Measures each stage of Program.compile and the execution separately, every stage gets the output of the previous one precomputed.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5,time=1)
+@Measurement(iterations=5,time=1)
+@Fork(1)
+public class StageBenchmark {
+	@Param({"fib","binary_trees","method_call","instantiation","string_equality","zoo","properties","super_call","helpers"})
+	String workload;
+
+	private String source;
+	private List<Token> tokens;
+	private Program program;
+	private ErrorReporter reporter;
+	private PrintStream stdout;
+
+	@Setup
+	public void setup() {
+		stdout=Workloads.silenceOutput();
+		source=Workloads.load(workload);
+		reporter=new ErrorReporter(System.err);
+		tokens=new Scanner(source,reporter).scanTokens();
+		program=Workloads.compile(source);
+	}
+	@TearDown
+	public void tearDown() {
+		System.setOut(stdout);
+	}
+	@Benchmark
+	public List<Token> scan() {
+		return new Scanner(source,reporter).scanTokens();
+	}
+	@Benchmark
+	public List<Stmt> parse() {
+		return new Parser(tokens,reporter).parse();
+	}
+	@Benchmark
+	public Resolver resolve() {
+		Resolver resolver=new Resolver(reporter);
+		resolver.resolve(program.statements);
+		return resolver;
+	}
+	@Benchmark
+	public FlatProgram lower() {
+		return FlatProgram.lower(program);
+	}
+	@Benchmark
+	public ClosureProgram convert() {
+		return ClosureProgram.compile(program);
+	}
+	@Benchmark
+	public Interpreter interpret() {
+		Interpreter interpreter=new Interpreter(reporter);
+		interpreter.interpret(program);
+		return interpreter;
+	}
+	@Benchmark
+	public Interpreter interpretFlat() {
+		Interpreter interpreter=new Interpreter(reporter);
+		interpreter.engine=Engine.FLAT;
+		interpreter.interpret(program);
+		return interpreter;
+	}
+	@Benchmark
+	public Interpreter interpretClosures() {
+		Interpreter interpreter=new Interpreter(reporter);
+		interpreter.engine=Engine.CLOSURE;
+		interpreter.interpret(program);
+		return interpreter;
+	}
+}
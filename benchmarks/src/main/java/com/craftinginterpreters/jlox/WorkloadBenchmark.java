@@ -0,0 +1,52 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Runs the standard Lox workloads end to end, from source text to the last executed statement.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5,time=2)
+@Measurement(iterations=5,time=2)
+@Fork(1)
+public class WorkloadBenchmark {
+	@Param({"fib","binary_trees","method_call","instantiation","string_equality","zoo","properties","super_call","helpers"})
+	String workload;
+	@Param({"tree","flat","closure"})
+	String engine;
+
+	private String source;
+	private PrintStream stdout;
+
+	@Setup
+	public void setup() {
+		stdout=Workloads.silenceOutput();
+		source=Workloads.load(workload);
+	}
+	@TearDown
+	public void tearDown() {
+		System.setOut(stdout);
+	}
+	@Benchmark
+	public Interpreter run() {
+		Program program=Workloads.compile(source);
+		Interpreter interpreter=new Interpreter(new ErrorReporter(System.err));
+		interpreter.engine=Engine.valueOf(engine.toUpperCase());
+		interpreter.interpret(program);
+		return interpreter;
+	}
+}
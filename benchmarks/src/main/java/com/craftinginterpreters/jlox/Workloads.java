@@ -0,0 +1,35 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+//Shared helpers for the benchmarks: loading the bundled .lox workloads and running the front end stages on them.
+//The benchmarks live in the interpreter's package so they can drive Scanner, Parser and Resolver directly.
+final class Workloads {
+	private Workloads() {}
+
+	static String load(String name) {
+		try(InputStream in=Workloads.class.getResourceAsStream("/workloads/"+name+".lox")) {
+			if(in==null) throw new IllegalArgumentException("Unknown workload '"+name+"'.");
+			return new String(in.readAllBytes(),StandardCharsets.UTF_8);
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	//A workload that doesn't compile is a broken benchmark, not something to measure.
+	static Program compile(String source) {
+		Program program=Program.compile(source,new ErrorReporter(System.err));
+		if(program==null) throw new IllegalStateException("Workload has compile errors.");
+		return program;
+	}
+	//Workloads print their results, we don't want console I/O in the measurement.
+	static PrintStream silenceOutput() {
+		PrintStream original=System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		return original;
+	}
+}
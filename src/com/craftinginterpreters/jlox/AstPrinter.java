@@ -41,9 +41,9 @@ class AstPrinter implements Expr.Visitor<String>{
 	public static void main(String[] args) {
 		Expr expression=new Expr.Binary(
 				new Expr.Unary(
-					new Token(TokenType.MINUS,"-",null,1),
+					new Token(TokenType.MINUS,"-",1),
 					new Expr.Literal(123)),
-				new Token(TokenType.STAR,"*",null,1),
+				new Token(TokenType.STAR,"*",1),
 				new Expr.Grouping(
 						new Expr.Literal(45.67))
 				
@@ -52,22 +52,39 @@ class AstPrinter implements Expr.Visitor<String>{
 	}
 	@Override
 	public String visitVariableExpr(Variable expr) {
-		// TODO Auto-generated method stub
-		return null;
+		return expr.name.lexeme;
 	}
 	@Override
 	public String visitAssignExpr(Assign expr) {
-		// TODO Auto-generated method stub
-		return null;
+		return parenthesize("= "+expr.name.lexeme,expr.value);
 	}
 	@Override
 	public String visitLogicalExpr(Logical expr) {
-		// TODO Auto-generated method stub
-		return null;
+		return parenthesize(expr.operator.lexeme,expr.left,expr.right);
 	}
 	@Override
 	public String visitCallExpr(Call expr) {
-		// TODO Auto-generated method stub
-		return null;
+		Expr[] exprs=new Expr[expr.arguments.size()+1];
+		exprs[0]=expr.calle;
+		for(int i=0;i<expr.arguments.size();i++) {
+			exprs[i+1]=expr.arguments.get(i);
+		}
+		return parenthesize("call",exprs);
+	}
+	@Override
+	public String visitGetExpr(Expr.Get expr) {
+		return parenthesize("."+expr.name.lexeme,expr.object);
+	}
+	@Override
+	public String visitSetExpr(Expr.Set expr) {
+		return parenthesize("= ."+expr.name.lexeme,expr.object,expr.value);
+	}
+	@Override
+	public String visitSuperExpr(Expr.Super expr) {
+		return "(super "+expr.method.lexeme+")";
+	}
+	@Override
+	public String visitThisExpr(Expr.This expr) {
+		return "this";
 	}
-}
\ No newline at end of file
+}
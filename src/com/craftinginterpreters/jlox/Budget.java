@@ -0,0 +1,64 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//How much work and memory one execution may use, shared by the interpreter running it and every task it spawns.
+//Fuel is charged one unit per statement, loop iteration and call. Memory is an estimate in bytes of the
+//environments, instances, strings, lists and maps the script creates, and of every array a list or map grows into,
+//nothing is given back when they become garbage.
+//Calls are also limited in how deep they nest, so unbounded recursion fails like the other budgets instead of
+//overflowing the thread's stack.
+//Interpreters draw from the budget in chunks and count down plain fields of their own, so the accounting on
+//the hot path is a decrement. Running out raises a RuntimeError the embedder can catch like any other,
+//the interpreter stays exhausted afterwards.
+final class Budget {
+	static final long UNLIMITED=Long.MAX_VALUE;
+	//Approximate footprint of an environment and an instance with their hash maps, and of a string's header.
+	static final long ENVIRONMENT_BYTES=96;
+	static final long INSTANCE_BYTES=96;
+	static final long STRING_BYTES=40;
+	//An empty list or map with its initial arrays, and what one slot of their arrays takes.
+	static final long LIST_BYTES=112;
+	static final long MAP_BYTES=320;
+	static final long SLOT_BYTES=8;
+	//How many Java frames a Lox call takes depends on the engine and on how deeply its expressions nest, 256 calls
+	//of ordinary code fit a default 1 MB thread stack on every engine with room to spare. Code that overflows the
+	//stack first gets the same error from LoxFunction.invoke.
+	static final int DEFAULT_DEPTH=256;
+	private static final long FUEL_CHUNK=1<<16;
+	private static final long MEMORY_CHUNK=1<<20;
+	private final AtomicLong fuel;
+	private final AtomicLong memory;
+	//Most calls the interpreter and each of its tasks may have in progress at once, every task has a stack of its own.
+	final int depth;
+
+	Budget(long fuel,long memory){
+		this(fuel,memory,DEFAULT_DEPTH);
+	}
+	Budget(long fuel,long memory,int depth){
+		if(fuel<0 || memory<0) throw new IllegalArgumentException("Budgets can't be negative.");
+		if(depth<1) throw new IllegalArgumentException("The call depth must be at least 1.");
+		this.fuel=new AtomicLong(fuel);
+		this.memory=new AtomicLong(memory);
+		this.depth=depth;
+	}
+	static Budget unlimited() {
+		return new Budget(UNLIMITED,UNLIMITED);
+	}
+	//An interpreter's counter went below zero by owed, returns how much it gets to count down from zero again,
+	//or a negative number if the budget can't cover the debt.
+	long refuel(long owed) {
+		return take(fuel,owed,FUEL_CHUNK);
+	}
+	long reserve(long owed) {
+		return take(memory,owed,MEMORY_CHUNK);
+	}
+	private static long take(AtomicLong pool,long owed,long chunk) {
+		for(;;) {
+			long available=pool.get();
+			if(available<owed) return -1;
+			long taken=Math.min(available,owed+chunk);
+			if(pool.compareAndSet(available,available-taken)) return taken-owed;
+		}
+	}
+}
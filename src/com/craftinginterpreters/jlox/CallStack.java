@@ -0,0 +1,62 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.Arrays;
+
+//Shadow stack of the Lox functions currently executing, kept next to the Java stack so we can tell which Lox code is running.
+//Each frame holds the name of the callee and the line it is currently calling out from.
+//The bottom frame is the top-level script (or "task" for a spawned task) and is never popped.
+//Only the interpreter thread writes to it. The profiler reads it from another thread without locking,
+//a sample can be slightly stale which is fine for a statistical profiler.
+class CallStack {
+	private String[] names=new String[64];
+	private int[] lines=new int[64];
+	private int depth=0;
+
+	CallStack(){
+		this("script");
+	}
+	CallStack(String root){
+		push(root);
+	}
+	void push(String name) {
+		if(depth==names.length) {
+			names=Arrays.copyOf(names, depth*2);
+			lines=Arrays.copyOf(lines, depth*2);
+		}
+		names[depth]=name;
+		//Until the frame makes a call of its own it points at the line it was called from,
+		//that's what a class frame shows since its initializer is called without a call expression.
+		lines[depth]=depth>0?lines[depth-1]:0;
+		depth++;
+	}
+	void pop() {
+		depth--;
+	}
+	//Frames on the stack, the bottom one included.
+	int depth() {
+		return depth;
+	}
+	//Records the line of the call the innermost frame is about to make, so the trace can point at the call site.
+	void line(int line) {
+		lines[depth-1]=line;
+	}
+	//Copy of the frame names from the bottom up, taken racily for the sampler.
+	String[] snapshot() {
+		String[] current=names;
+		int size=Math.min(depth,current.length);
+		String[] frames=new String[size];
+		for(int i=0;i<size;i++) {
+			frames[i]=current[i];
+		}
+		return frames;
+	}
+	//Lox level stack trace from the innermost frame outwards, the innermost frame is at the line the error happened.
+	String trace(int line) {
+		StringBuilder builder=new StringBuilder();
+		for(int i=depth-1;i>=0;i--) {
+			int at=(i==depth-1)?line:lines[i];
+			builder.append("\tat ").append(names[i]).append(" [line ").append(at).append("]\n");
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,51 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//Lets the host stop an execution from another thread, shared by an interpreter and the tasks it spawns.
+//The interpreter polls it at loop iterations, calls and function entry, and while it waits on a task or a channel,
+//then stops with a RuntimeError at the line it got to. Interrupting an interpreter thread has the same effect.
+//Once cancelled it stays cancelled.
+final class Cancellation {
+	//How long blocking natives wait before they look again.
+	static final long POLL_MILLIS=10;
+	private static final ScheduledThreadPoolExecutor timer=createTimer();
+	private volatile String reason;
+	private ScheduledFuture<?> timeout;
+
+	private static ScheduledThreadPoolExecutor createTimer() {
+		ScheduledThreadPoolExecutor timer=new ScheduledThreadPoolExecutor(1,runnable->{
+			Thread thread=new Thread(runnable,"lox-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+	void cancel() {
+		cancel("Execution cancelled.");
+	}
+	private void cancel(String reason) {
+		if(this.reason==null) this.reason=reason;
+	}
+	//Cancels the execution after millis unless finish() is called first.
+	synchronized void timeout(long millis) {
+		if(timeout!=null) timeout.cancel(false);
+		timeout=timer.schedule(()->cancel("Execution timed out after "+millis+" ms."),millis,TimeUnit.MILLISECONDS);
+	}
+	synchronized void finish() {
+		if(timeout!=null) timeout.cancel(false);
+		timeout=null;
+	}
+	//The check on the hot path, a volatile read and the thread's interrupt flag.
+	boolean requested() {
+		return reason!=null || Thread.currentThread().isInterrupted();
+	}
+	void check(Token at) {
+		String reason=this.reason;
+		if(reason!=null) throw new RuntimeError(at,reason);
+		if(Thread.currentThread().isInterrupted()) throw new RuntimeError(at,"Execution interrupted.");
+	}
+}
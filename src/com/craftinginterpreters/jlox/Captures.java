@@ -0,0 +1,36 @@
+package com.craftinginterpreters.jlox;
+
+//The local variables a function declaration refers to from outside its own scopes, with their distance from the
+//scope the function is declared in. The Resolver works them out, nested functions' captures included.
+//A closure keeps only these: one fresh level per scope up to the farthest capture, each holding just the cells of
+//the variables captured from it, on top of globals. Distances inside the body stay what the Resolver computed and
+//everything else the enclosing scopes held is free to go once they are done.
+final class Captures {
+	static final Captures NONE=new Captures(new String[0],new int[0]);
+	private final String[] names;
+	private final int[] distances;
+	private final int depth;
+
+	Captures(String[] names,int[] distances){
+		this.names=names;
+		this.distances=distances;
+		int depth=0;
+		for(int distance:distances) {
+			depth=Math.max(depth,distance+1);
+		}
+		this.depth=depth;
+	}
+	Environment close(Environment environment,Environment globals) {
+		if(depth==0) return globals;
+		Environment[] levels=new Environment[depth];
+		Environment level=globals;
+		for(int i=depth-1;i>=0;i--) {
+			level=new Environment(level);
+			levels[i]=level;
+		}
+		for(int i=0;i<names.length;i++) {
+			levels[distances[i]].capture(environment.ancestor(distances[i]),names[i]);
+		}
+		return levels[0];
+	}
+}
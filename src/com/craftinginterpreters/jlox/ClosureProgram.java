@@ -0,0 +1,826 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+//A resolved Program converted once into a tree of Java lambdas, see Engine.CLOSURE.
+//Every decision the tree walker makes again each time it reaches a node is made here once: the operator of a binary
+//expression picks the lambda, scope distances and global slots are captured as ints and a call site picks the entry
+//point for its argument count. Running the program is then nothing but direct calls from one lambda to the next,
+//no visitor double dispatch, no switch on token types and no locals lookups.
+//It runs on the Interpreter's execution context like the other engines, so functions from all of them mix freely.
+//Like Program it can be shared by any number of interpreters. The only thing that changes is the call profile,
+//which lets hot call sites inline small functions (see CallSite). A Debugger swaps statements (see Site) in a
+//conversion of its own.
+final class ClosureProgram {
+	interface Code {
+		Object evaluate(Interpreter interpreter);
+	}
+	interface Action {
+		void execute(Interpreter interpreter);
+	}
+	//Calls a callable that isn't a Lox function with the arguments of a call site.
+	private interface Invoke {
+		Object call(Interpreter interpreter,LoxCallable function,Code[] arguments);
+	}
+
+	private final Action[] statements;
+	//Every statement outside a block of its own, in any function, where the debugger can stop.
+	final List<Site> sites;
+	//The value of the last statement if it is an expression statement, see Interpreter.run.
+	private final Code tail;
+
+	private ClosureProgram(Action[] statements,List<Site> sites,Code tail) {
+		this.statements=statements;
+		this.sites=List.copyOf(sites);
+		this.tail=tail;
+	}
+	static ClosureProgram compile(Program program) {
+		return compile(program,null);
+	}
+	//With coverage the converted code counts what runs into it, see Coverage.
+	static ClosureProgram compile(Program program,Coverage coverage) {
+		LoxEvents.Phase phase=LoxEvents.Phase.start("convert");
+		Compiler compiler=new Compiler(program,coverage);
+		List<Stmt> source=program.statements;
+		Action[] statements=compiler.compile(source);
+		Code tail=null;
+		if(!source.isEmpty() && source.get(source.size()-1) instanceof Stmt.Expression) {
+			tail=compiler.compile(((Stmt.Expression)source.get(source.size()-1)).expression);
+		}
+		phase.finish();
+		return new ClosureProgram(statements,compiler.sites,tail);
+	}
+	void execute(Interpreter interpreter) {
+		for(Action statement:statements) {
+			statement.execute(interpreter);
+		}
+	}
+	Object run(Interpreter interpreter) {
+		int last=statements.length-1;
+		for(int i=0;i<last;i++) {
+			statements[i].execute(interpreter);
+		}
+		if(last<0) return null;
+		if(tail!=null) {
+			interpreter.statementsExecuted++;
+			return tail.evaluate(interpreter);
+		}
+		statements[last].execute(interpreter);
+		return null;
+	}
+	//See Interpreter.execute, every statement starts with it.
+	private static void count(Interpreter interpreter) {
+		interpreter.statementsExecuted++;
+		interpreter.fuel--;
+	}
+	private static void execute(Interpreter interpreter,Action[] statements) {
+		for(Action statement:statements) {
+			statement.execute(interpreter);
+		}
+	}
+
+	//A function declaration with its body converted. The declaration stays for the name and parameters.
+	static final class ClosureFunction implements LoxFunction.Body {
+		final Stmt.Function declaration;
+		final Captures captures;
+		final boolean method;
+		private final Action[] body;
+		private final Map<Expr,Integer> locals;
+		private static final int HOT_CALLS=1000;
+		//Times the body ran, up to HOT_CALLS. Tasks running the function race on it and can lose a count, which only
+		//makes it hot a little later, volatile so every task sees it get there.
+		private volatile int calls;
+		//Sites in the body the debugger has swapped a wrapper into, see Site.
+		int patched;
+		//Compiled at most once, under the function's lock, and read through the volatile.
+		private volatile boolean inliningTried;
+		private Inlining inlining;
+
+		ClosureFunction(Stmt.Function declaration,Captures captures,boolean method,Action[] body,Map<Expr,Integer> locals){
+			this.declaration=declaration;
+			this.captures=captures;
+			this.method=method;
+			this.body=body;
+			this.locals=locals;
+		}
+		LoxFunction declare(Interpreter interpreter,boolean isInitializer) {
+			return new LoxFunction(this,isInitializer,captures.close(interpreter.environment,interpreter.globals));
+		}
+		@Override
+		public Token name() {
+			return declaration.name;
+		}
+		@Override
+		public int arity() {
+			return declaration.params.size();
+		}
+		@Override
+		public String parameter(int index) {
+			return declaration.params.get(index).lexeme;
+		}
+		boolean hot() {
+			return calls>=HOT_CALLS;
+		}
+		//Compiled the first time a call site asks, null if the function can't be inlined.
+		Inlining inlining() {
+			if(inliningTried) return inlining;
+			synchronized(this) {
+				if(!inliningTried) {
+					inlining=Inlining.of(this,locals);
+					inliningTried=true;
+				}
+				return inlining;
+			}
+		}
+		@Override
+		public void execute(Interpreter interpreter,Environment environment) {
+			int calls=this.calls;
+			if(calls<HOT_CALLS) this.calls=calls+1;
+			Environment previous=interpreter.environment;
+			try {
+				interpreter.environment=environment;
+				ClosureProgram.execute(interpreter,body);
+			}finally {
+				interpreter.environment=previous;
+			}
+		}
+	}
+
+	//Profiles the functions a call site calls. Once it has called the same hot function HOT_SITE times in a row and
+	//the function can be inlined, it evaluates the function's Inlining instead of calling it, for as long as the
+	//callee stays that function. A site that keeps changing its mind, or whose function can't be inlined, stops
+	//profiling and just calls.
+	//The site belongs to the shared ClosureProgram, so tasks running the same code profile it together. The counters
+	//are racy and only decide when the site settles. What it settles on is written once, under the site's lock, into
+	//inlined before the volatile settled flag, and is only read after seeing that flag set.
+	private static final class CallSite {
+		private static final int HOT_SITE=100;
+		private static final int MAX_CHANGES=4;
+		private final Token paren;
+		private final Code[] arguments;
+		private final Invoke invoke;
+		private ClosureFunction seen;
+		private int hits;
+		private int changes;
+		private volatile boolean settled;
+		private Inlining inlined;
+
+		CallSite(Token paren,Code[] arguments,boolean inlines){
+			this.paren=paren;
+			this.arguments=arguments;
+			this.invoke=invoke(arguments.length);
+			this.settled=!inlines;
+		}
+		//receiver is the instance a method found on it runs on without being bound, or null.
+		Object call(Interpreter interpreter,Object callee,LoxInstance receiver) {
+			if(settled) {
+				Inlining inlined=this.inlined;
+				//A function the debugger is watching has to run its statements for the debugger to stop in them.
+				if(inlined!=null && callee instanceof LoxFunction && inlined.function.patched==0) {
+					LoxFunction function=(LoxFunction)callee;
+					if(function.body()==inlined.function && inlined.function.method==(receiver!=null)) {
+						return inline(interpreter,function,receiver,inlined);
+					}
+				}
+			}else if(callee instanceof LoxFunction) {
+				profile((LoxFunction)callee,receiver);
+			}
+			return ClosureProgram.call(interpreter,callee,receiver,paren,arguments,invoke);
+		}
+		private void profile(LoxFunction function,LoxInstance receiver) {
+			if(!(function.body() instanceof ClosureFunction)) return;
+			ClosureFunction target=(ClosureFunction)function.body();
+			if(target!=seen) {
+				seen=target;
+				hits=0;
+				if(++changes>MAX_CHANGES) settle(null);
+				return;
+			}
+			if(++hits<HOT_SITE || !target.hot()) return;
+			//A bound method called through a variable still needs the frame holding its 'this'.
+			settle(target.method==(receiver!=null)?target:null);
+		}
+		//The first task to get here decides, null is for a site that won't inline.
+		private synchronized void settle(ClosureFunction target) {
+			if(settled) return;
+			inlined=target==null?null:target.inlining();
+			settled=true;
+		}
+		//Does everything a call does for the budget, metrics, traces, the profiler and JFR, but evaluates the
+		//expression straight from the arguments. The arity matches, the function is the one the site was inlined for.
+		private Object inline(Interpreter interpreter,LoxFunction function,LoxInstance receiver,Inlining inlined) {
+			interpreter.callStack.line(paren.line);
+			interpreter.callsMade++;
+			interpreter.tick(paren);
+			Object[] values=new Object[arguments.length];
+			for(int i=0;i<values.length;i++) {
+				values[i]=arguments[i].evaluate(interpreter);
+			}
+			count(interpreter);
+			Token name=inlined.function.name();
+			interpreter.callStack.push(name.lexeme);
+			LoxEvents.Call event=new LoxEvents.Call();
+			event.begin();
+			Object value;
+			try {
+				value=inlined.evaluate(interpreter,receiver,values);
+			}catch(RuntimeError error) {
+				//Nothing the expression did is visible, running the call fails the same way with the function in the
+				//trace, and records the call's event itself.
+				interpreter.callStack.pop();
+				Environment frame=receiver==null?function.frame():function.frame(receiver);
+				for(int i=0;i<values.length;i++) {
+					frame.define(function.parameter(i),values[i]);
+				}
+				return function.invoke(interpreter,frame);
+			}
+			interpreter.callStack.pop();
+			LoxFunction.commit(event,name);
+			return value;
+		}
+	}
+
+	//A super.method expression. The superclass it sees only changes if its class declaration runs again, and a
+	//class's methods never change, so the site keeps the method it found for the last superclass it saw and only
+	//looks again for a different one. The pair is immutable, a task racing on the field sees one pair or the other.
+	private static final class SuperSite {
+		private final Token method;
+		private final int distance;
+		private Resolved resolved;
+
+		SuperSite(Expr.Super expr,int distance){
+			this.method=expr.method;
+			this.distance=distance;
+		}
+		LoxFunction method(Interpreter interpreter) {
+			LoxClass superclass=(LoxClass)interpreter.environment.getAt(distance,"super");
+			Resolved resolved=this.resolved;
+			if(resolved==null || resolved.superclass!=superclass) {
+				resolved=new Resolved(superclass,Interpreter.superMethod(superclass,method));
+				this.resolved=resolved;
+			}
+			return resolved.method;
+		}
+		//The instance the method runs on, 'this' sits one scope inside 'super'.
+		LoxInstance receiver(Interpreter interpreter) {
+			return (LoxInstance)interpreter.environment.getAt(distance-1,"this");
+		}
+
+		private static final class Resolved {
+			final LoxClass superclass;
+			final LoxFunction method;
+
+			Resolved(LoxClass superclass,LoxFunction method){
+				this.superclass=superclass;
+				this.method=method;
+			}
+		}
+	}
+
+	//See Interpreter.visitCallExpr.
+	private static void evaluateAll(Interpreter interpreter,Code[] arguments) {
+		for(Code argument:arguments) {
+			argument.evaluate(interpreter);
+		}
+	}
+	//See Interpreter.visitCallExpr, receiver is the instance a super call runs on or null.
+	private static Object call(Interpreter interpreter,Object callee,LoxInstance receiver,Token paren,Code[] arguments,Invoke invoke) {
+		if(!(callee instanceof LoxCallable)) {
+			evaluateAll(interpreter,arguments);
+			throw new RuntimeError(paren,"Can only call functions and classes.");
+		}
+		LoxCallable function=(LoxCallable)callee;
+		int count=arguments.length;
+		if(count!=function.arity()) {
+			evaluateAll(interpreter,arguments);
+			throw new RuntimeError(paren,"Expected "+function.arity()+" arguements but go "+count+".");
+		}
+		interpreter.callStack.line(paren.line);
+		interpreter.callsMade++;
+		interpreter.tick(paren);
+		try {
+			if(function instanceof LoxFunction) {
+				LoxFunction loxFunction=(LoxFunction)function;
+				Environment frame=receiver==null?loxFunction.frame():loxFunction.frame(receiver);
+				for(int i=0;i<count;i++) {
+					frame.define(loxFunction.parameter(i),arguments[i].evaluate(interpreter));
+				}
+				return loxFunction.invoke(interpreter,frame);
+			}
+			Object result=invoke.call(interpreter,function,arguments);
+			if(result instanceof String) interpreter.allocate(paren,(String)result);
+			return result;
+		}catch(RuntimeError error) {
+			if(error.token==null) throw new RuntimeError(paren,error.getMessage());
+			throw error;
+		}
+	}
+	private static Invoke invoke(int count) {
+		switch(count) {
+		case 0: return (interpreter,function,arguments)->function.call0(interpreter);
+		case 1: return (interpreter,function,arguments)->function.call1(interpreter,arguments[0].evaluate(interpreter));
+		case 2: return (interpreter,function,arguments)->function.call2(interpreter,arguments[0].evaluate(interpreter),
+				arguments[1].evaluate(interpreter));
+		case 3: return (interpreter,function,arguments)->function.call3(interpreter,arguments[0].evaluate(interpreter),
+				arguments[1].evaluate(interpreter),arguments[2].evaluate(interpreter));
+		case 4: return (interpreter,function,arguments)->function.call4(interpreter,arguments[0].evaluate(interpreter),
+				arguments[1].evaluate(interpreter),arguments[2].evaluate(interpreter),arguments[3].evaluate(interpreter));
+		default: return (interpreter,function,arguments)->{
+			Object[] values=new Object[arguments.length];
+			for(int i=0;i<values.length;i++) {
+				values[i]=arguments[i].evaluate(interpreter);
+			}
+			return function.call(interpreter,values);
+		};
+		}
+	}
+	//See Interpreter.visitClassStmt.
+	private static void declareClass(Interpreter interpreter,Token name,Code superclassCode,Token superclassName,ClosureFunction[] methods) {
+		Object superclass=null;
+		if(superclassCode!=null) {
+			superclass=superclassCode.evaluate(interpreter);
+			if(!(superclass instanceof LoxClass)) {
+				throw new RuntimeError(superclassName,"Superclass must be a class.");
+			}
+		}
+		interpreter.environment.define(name.lexeme,null);
+		if(superclass!=null) {
+			interpreter.environment=new Environment(interpreter.environment);
+			interpreter.environment.define("super",superclass);
+		}
+		Map<String,LoxFunction> declared=new HashMap<>();
+		for(ClosureFunction method:methods) {
+			String methodName=method.declaration.name.lexeme;
+			declared.put(methodName,method.declare(interpreter,methodName.equals("init")));
+		}
+		LoxClass klass=new LoxClass(name.lexeme,(LoxClass)superclass,declared);
+		if(superclass!=null) {
+			interpreter.environment=interpreter.environment.enclosing;
+		}
+		interpreter.environment.assign(name,klass);
+	}
+
+	//A binary operator with its operand checks, chosen once per expression.
+	interface Operator {
+		Object apply(Interpreter interpreter,Object left,Object right);
+	}
+	static Operator operator(Token operator) {
+		switch(operator.type) {
+		case EQUAL_EQUAL: return (interpreter,a,b)->Interpreter.isEqual(a,b);
+		case BANG_EQUAL: return (interpreter,a,b)->!Interpreter.isEqual(a,b);
+		case PLUS:
+			return (interpreter,a,b)->{
+				if(a instanceof Double && b instanceof Double) {
+					return (double)a+(double)b;
+				}
+				if(a instanceof String && b instanceof String) {
+					String result=(String)a+(String)b;
+					interpreter.allocate(operator,result);
+					return result;
+				}
+				throw new RuntimeError(operator,"Operands must be two numbers or two strings");
+			};
+		case MINUS:
+			return (interpreter,a,b)->{
+				Interpreter.checkNumberOperands(operator,a,b);
+				return (double)a-(double)b;
+			};
+		case STAR:
+			return (interpreter,a,b)->{
+				Interpreter.checkNumberOperands(operator,a,b);
+				return (double)a*(double)b;
+			};
+		case SLASH:
+			return (interpreter,a,b)->{
+				Interpreter.checkNumberOperands(operator,a,b);
+				return (double)a/(double)b;
+			};
+		case GREATER:
+			return (interpreter,a,b)->{
+				Interpreter.checkNumberOperands(operator,a,b);
+				return (double)a>(double)b;
+			};
+		case GREATER_EQUAL:
+			return (interpreter,a,b)->{
+				Interpreter.checkNumberOperands(operator,a,b);
+				return (double)a>=(double)b;
+			};
+		case LESS:
+			return (interpreter,a,b)->{
+				Interpreter.checkNumberOperands(operator,a,b);
+				return (double)a<(double)b;
+			};
+		case LESS_EQUAL:
+			return (interpreter,a,b)->{
+				Interpreter.checkNumberOperands(operator,a,b);
+				return (double)a<=(double)b;
+			};
+		default:
+			throw new IllegalStateException("Unexpected operator "+operator);
+		}
+	}
+
+	//If and While hold their branches in fields the debugger can swap, see Site.
+	private static final class If implements Action {
+		private final Code condition;
+		private Action thenBranch;
+		private Action elseBranch;
+
+		If(Code condition,Action thenBranch,Action elseBranch){
+			this.condition=condition;
+			this.thenBranch=thenBranch;
+			this.elseBranch=elseBranch;
+		}
+		@Override
+		public void execute(Interpreter interpreter) {
+			count(interpreter);
+			if(Interpreter.isTruthy(condition.evaluate(interpreter))) {
+				thenBranch.execute(interpreter);
+			}else if(elseBranch!=null) {
+				elseBranch.execute(interpreter);
+			}
+		}
+	}
+	private static final class While implements Action {
+		private final Code condition;
+		private Action body;
+		private final Token keyword;
+
+		While(Code condition,Action body,Token keyword){
+			this.condition=condition;
+			this.body=body;
+			this.keyword=keyword;
+		}
+		@Override
+		public void execute(Interpreter interpreter) {
+			count(interpreter);
+			while(Interpreter.isTruthy(condition.evaluate(interpreter))) {
+				body.execute(interpreter);
+				interpreter.tick(keyword);
+			}
+		}
+	}
+	//A place in the converted code holding a statement: an element of a statement array or a branch of an if or
+	//a while. The debugger swaps a wrapper in to see the statement run and puts the statement back when it is done,
+	//so code without breakpoints runs exactly as converted. The swap is a plain write into code the debugged
+	//execution's tasks may be running, they pick it up at some point, which is as soon as a breakpoint set from
+	//another thread needs.
+	//While one is swapped the function it is in isn't inlined, call sites have to run its statements.
+	static final class Site {
+		final int line;
+		final Action statement;
+		private final Consumer<Action> slot;
+		//Null at the top level, set by the Compiler once the function is converted.
+		private ClosureFunction function;
+
+		Site(int line,Action statement,Consumer<Action> slot){
+			this.line=line;
+			this.statement=statement;
+			this.slot=slot;
+		}
+		void replace(Action wrapper) {
+			if(function!=null) function.patched++;
+			slot.accept(wrapper);
+		}
+		void restore() {
+			slot.accept(statement);
+			if(function!=null) function.patched--;
+		}
+	}
+
+	private static final class Compiler implements Expr.Visitor<Code>,Stmt.Visitor<Action> {
+		private final Program program;
+		private final List<Site> sites=new ArrayList<>();
+		//Null unless the code is converted to be covered.
+		private final Coverage coverage;
+
+		Compiler(Program program,Coverage coverage){
+			this.program=program;
+			this.coverage=coverage;
+		}
+		Action[] compile(List<Stmt> statements) {
+			Action[] actions=new Action[statements.size()];
+			for(int i=0;i<actions.length;i++) {
+				actions[i]=compile(statements.get(i));
+				int index=i;
+				site(statements.get(i),actions[i],action->actions[index]=action);
+			}
+			return actions;
+		}
+		//Blocks aren't sites themselves, their statements are.
+		private void site(Stmt stmt,Action statement,Consumer<Action> slot) {
+			if(stmt instanceof Stmt.Block) return;
+			int line=Lines.of(stmt);
+			if(line>0) sites.add(new Site(line,statement,slot));
+		}
+		private Action compile(Stmt stmt) {
+			Action action=stmt.accept(this);
+			if(coverage==null || stmt instanceof Stmt.Block) return action;
+			int line=Lines.of(stmt);
+			if(line<=0) return action;
+			return counted(coverage.statement(line),action);
+		}
+		//Bumps counter id of the coverage before running action, if there is one.
+		private Action counted(int id,Action action) {
+			LongAdder counter=coverage.counter(id);
+			if(action==null) return interpreter->counter.increment();
+			return interpreter->{
+				counter.increment();
+				action.execute(interpreter);
+			};
+		}
+		Code compile(Expr expr) {
+			return expr.accept(this);
+		}
+		private int distance(Expr expr) {
+			Integer distance=program.locals.get(expr);
+			if(distance==null) throw new IllegalStateException("Unresolved expression "+expr);
+			return distance;
+		}
+		private ClosureFunction function(Stmt.Function function,boolean method) {
+			Captures captures=program.captures.getOrDefault(function,Captures.NONE);
+			int first=sites.size();
+			ClosureFunction converted=new ClosureFunction(function,captures,method,compile(function.body),program.locals);
+			//Sites of nested functions already have theirs.
+			for(Site site:sites.subList(first,sites.size())) {
+				if(site.function==null) site.function=converted;
+			}
+			return converted;
+		}
+		private Code variable(Expr expr,Token name) {
+			int distance=distance(expr);
+			if(distance<0) {
+				int slot=-1-distance;
+				return interpreter->interpreter.readGlobal(slot,name);
+			}
+			String lexeme=name.lexeme;
+			return interpreter->interpreter.environment.getAt(distance,lexeme);
+		}
+		@Override
+		public Code visitAssignExpr(Expr.Assign expr) {
+			Code value=compile(expr.value);
+			Token name=expr.name;
+			int distance=distance(expr);
+			if(distance<0) {
+				int slot=-1-distance;
+				return interpreter->{
+					Object result=value.evaluate(interpreter);
+					interpreter.writeGlobal(slot,name,result);
+					return result;
+				};
+			}
+			return interpreter->{
+				Object result=value.evaluate(interpreter);
+				interpreter.environment.assignAt(distance,name,result);
+				return result;
+			};
+		}
+		@Override
+		public Code visitBinaryExpr(Expr.Binary expr) {
+			Code left=compile(expr.left);
+			Code right=compile(expr.right);
+			Operator operator=operator(expr.operator);
+			return interpreter->operator.apply(interpreter,left.evaluate(interpreter),right.evaluate(interpreter));
+		}
+		@Override
+		public Code visitCallExpr(Expr.Call expr) {
+			Token paren=expr.paren;
+			Code[] arguments=new Code[expr.arguments.size()];
+			for(int i=0;i<arguments.length;i++) {
+				arguments[i]=compile(expr.arguments.get(i));
+			}
+			CallSite site=new CallSite(paren,arguments,coverage==null);
+			if(expr.calle instanceof Expr.Super) {
+				//super.method(...) calls the method straight on 'this' instead of binding it first.
+				SuperSite target=new SuperSite((Expr.Super)expr.calle,distance(expr.calle));
+				return interpreter->site.call(interpreter,target.method(interpreter),target.receiver(interpreter));
+			}
+			if(expr.calle instanceof Expr.Get) {
+				//object.method(...) the same way, unless a field shadows the method.
+				Expr.Get get=(Expr.Get)expr.calle;
+				Code object=compile(get.object);
+				Token name=get.name;
+				return interpreter->{
+					Object value=object.evaluate(interpreter);
+					if(value instanceof LoxInstance) {
+						LoxInstance instance=(LoxInstance)value;
+						LoxFunction method=instance.method(name.lexeme);
+						if(method!=null) return site.call(interpreter,method,instance);
+						return site.call(interpreter,instance.get(name),null);
+					}
+					if(value instanceof NativeModule) return site.call(interpreter,((NativeModule)value).get(name),null);
+					throw new RuntimeError(name,"Only instances have properties.");
+				};
+			}
+			Code callee=compile(expr.calle);
+			return interpreter->site.call(interpreter,callee.evaluate(interpreter),null);
+		}
+		@Override
+		public Code visitGetExpr(Expr.Get expr) {
+			Code object=compile(expr.object);
+			Token name=expr.name;
+			return interpreter->{
+				Object value=object.evaluate(interpreter);
+				if(value instanceof LoxInstance) return ((LoxInstance)value).get(name);
+				if(value instanceof NativeModule) return ((NativeModule)value).get(name);
+				throw new RuntimeError(name,"Only instances have properties.");
+			};
+		}
+		@Override
+		public Code visitGroupingExpr(Expr.Grouping expr) {
+			return compile(expr.expression);
+		}
+		@Override
+		public Code visitLiteralExpr(Expr.Literal expr) {
+			Object value=expr.value;
+			return interpreter->value;
+		}
+		@Override
+		public Code visitLogicalExpr(Expr.Logical expr) {
+			Code left=compile(expr.left);
+			Code right=compile(expr.right);
+			if(coverage!=null) {
+				//Counts the left operand deciding, then the right one having to be evaluated.
+				int id=coverage.branch(expr.operator.line);
+				LongAdder decided=coverage.counter(id);
+				LongAdder evaluated=coverage.counter(id+1);
+				boolean decides=expr.operator.type==TokenType.OR;
+				return interpreter->{
+					Object value=left.evaluate(interpreter);
+					if(Interpreter.isTruthy(value)==decides) {
+						decided.increment();
+						return value;
+					}
+					evaluated.increment();
+					return right.evaluate(interpreter);
+				};
+			}
+			if(expr.operator.type==TokenType.OR) {
+				return interpreter->{
+					Object value=left.evaluate(interpreter);
+					if(Interpreter.isTruthy(value)) return value;
+					return right.evaluate(interpreter);
+				};
+			}
+			return interpreter->{
+				Object value=left.evaluate(interpreter);
+				if(!Interpreter.isTruthy(value)) return value;
+				return right.evaluate(interpreter);
+			};
+		}
+		@Override
+		public Code visitSetExpr(Expr.Set expr) {
+			Code object=compile(expr.object);
+			Code value=compile(expr.value);
+			Token name=expr.name;
+			return interpreter->{
+				Object instance=object.evaluate(interpreter);
+				if(!(instance instanceof LoxInstance)) {
+					throw new RuntimeError(name,"Only instances have fields.");
+				}
+				Object result=value.evaluate(interpreter);
+				((LoxInstance)instance).set(name,result);
+				return result;
+			};
+		}
+		@Override
+		public Code visitSuperExpr(Expr.Super expr) {
+			SuperSite site=new SuperSite(expr,distance(expr));
+			return interpreter->site.method(interpreter).bind(site.receiver(interpreter));
+		}
+		@Override
+		public Code visitThisExpr(Expr.This expr) {
+			return variable(expr,expr.keyword);
+		}
+		@Override
+		public Code visitUnaryExpr(Expr.Unary expr) {
+			Code right=compile(expr.right);
+			Token operator=expr.operator;
+			if(operator.type==TokenType.BANG) {
+				return interpreter->!Interpreter.isTruthy(right.evaluate(interpreter));
+			}
+			return interpreter->{
+				Object value=right.evaluate(interpreter);
+				Interpreter.checkNumberOperand(operator,value);
+				return -(double)value;
+			};
+		}
+		@Override
+		public Code visitVariableExpr(Expr.Variable expr) {
+			return variable(expr,expr.name);
+		}
+		@Override
+		public Action visitBlockStmt(Stmt.Block stmt) {
+			Action[] statements=compile(stmt.statments);
+			return interpreter->{
+				count(interpreter);
+				interpreter.memory-=Budget.ENVIRONMENT_BYTES;
+				interpreter.environmentsAllocated++;
+				Environment previous=interpreter.environment;
+				try {
+					interpreter.environment=new Environment(previous);
+					execute(interpreter,statements);
+				}finally {
+					interpreter.environment=previous;
+				}
+			};
+		}
+		@Override
+		public Action visitClassStmt(Stmt.Class stmt) {
+			Token name=stmt.name;
+			Code superclass=stmt.superclass==null?null:compile(stmt.superclass);
+			Token superclassName=stmt.superclass==null?null:stmt.superclass.name;
+			ClosureFunction[] methods=new ClosureFunction[stmt.methods.size()];
+			for(int i=0;i<methods.length;i++) {
+				methods[i]=function(stmt.methods.get(i),true);
+			}
+			return interpreter->{
+				count(interpreter);
+				declareClass(interpreter,name,superclass,superclassName,methods);
+			};
+		}
+		@Override
+		public Action visitExpressionStmt(Stmt.Expression stmt) {
+			Code expression=compile(stmt.expression);
+			return interpreter->{
+				count(interpreter);
+				expression.evaluate(interpreter);
+			};
+		}
+		@Override
+		public Action visitFunctionStmt(Stmt.Function stmt) {
+			ClosureFunction function=function(stmt,false);
+			Token name=stmt.name;
+			return interpreter->{
+				count(interpreter);
+				//Declared first so a recursive function captures its own name.
+				interpreter.environment.define(name.lexeme,null);
+				interpreter.environment.assignAt(0,name,function.declare(interpreter,false));
+			};
+		}
+		@Override
+		public Action visitIfStmt(Stmt.If stmt) {
+			Code condition=compile(stmt.condition);
+			Action thenBranch=compile(stmt.thenBranch);
+			Action elseBranch=stmt.elseBranch==null?null:compile(stmt.elseBranch);
+			if(coverage!=null) {
+				//Counts the then branch being taken, then the else branch or falling through.
+				int id=coverage.branch(stmt.keyword.line);
+				thenBranch=counted(id,thenBranch);
+				elseBranch=counted(id+1,elseBranch);
+			}
+			If node=new If(condition,thenBranch,elseBranch);
+			site(stmt.thenBranch,node.thenBranch,action->node.thenBranch=action);
+			if(stmt.elseBranch!=null) site(stmt.elseBranch,node.elseBranch,action->node.elseBranch=action);
+			return node;
+		}
+		@Override
+		public Action visitPrintStmt(Stmt.Print stmt) {
+			Code expression=compile(stmt.expression);
+			return interpreter->{
+				count(interpreter);
+				interpreter.out.println(expression.evaluate(interpreter));
+			};
+		}
+		@Override
+		public Action visitReturnStmt(Stmt.Return stmt) {
+			if(stmt.value==null) {
+				return interpreter->{
+					count(interpreter);
+					throw new Returnval(null);
+				};
+			}
+			Code value=compile(stmt.value);
+			return interpreter->{
+				count(interpreter);
+				throw new Returnval(value.evaluate(interpreter));
+			};
+		}
+		@Override
+		public Action visitVarStmt(Stmt.Var stmt) {
+			String name=stmt.name.lexeme;
+			if(stmt.initializer==null) {
+				return interpreter->{
+					count(interpreter);
+					interpreter.environment.define(name,null);
+				};
+			}
+			Code initializer=compile(stmt.initializer);
+			return interpreter->{
+				count(interpreter);
+				interpreter.environment.define(name,initializer.evaluate(interpreter));
+			};
+		}
+		@Override
+		public Action visitWhileStmt(Stmt.While stmt) {
+			While node=new While(compile(stmt.condition),compile(stmt.body),stmt.keyword);
+			site(stmt.body,node.body,action->node.body=action);
+			return node;
+		}
+	}
+}
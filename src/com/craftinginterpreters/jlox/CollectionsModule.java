@@ -0,0 +1,74 @@
+package com.craftinginterpreters.jlox;
+
+//The collections module, for the built in lists and maps:
+//collections.list() makes an empty list, collections.append(list,value) adds to its end,
+//collections.map() makes an empty map, has(map,key), remove(map,key) and keys(map) (a list, in insertion order)
+//work on maps, get(collection,key), set(collection,key,value) and length(collection) work on both.
+//A missing map key reads as nil.
+final class CollectionsModule {
+	private CollectionsModule() {}
+
+	@LoxNative
+	static LoxList list(Interpreter interpreter) {
+		interpreter.allocate(null,Budget.LIST_BYTES);
+		return new LoxList();
+	}
+	@LoxNative
+	static void append(Interpreter interpreter,LoxList list,Object value) {
+		list.append(interpreter,value);
+	}
+	@LoxNative
+	static LoxMap map(Interpreter interpreter) {
+		interpreter.allocate(null,Budget.MAP_BYTES);
+		return new LoxMap();
+	}
+	@LoxNative
+	static boolean has(LoxMap map,Object key) {
+		return map.has(key(key));
+	}
+	@LoxNative
+	static Object remove(LoxMap map,Object key) {
+		return map.remove(key(key));
+	}
+	@LoxNative
+	static LoxList keys(Interpreter interpreter,LoxMap map) {
+		return map.keys(interpreter);
+	}
+	@LoxNative
+	static Object get(Object collection,Object key) {
+		if(collection instanceof LoxMap) return ((LoxMap)collection).get(key(key));
+		LoxList list=list(collection);
+		return list.get(index(list,key));
+	}
+	@LoxNative
+	static Object set(Interpreter interpreter,Object collection,Object key,Object value) {
+		if(collection instanceof LoxMap) {
+			((LoxMap)collection).put(interpreter,key(key),value);
+			return value;
+		}
+		LoxList list=list(collection);
+		list.set(interpreter,index(list,key),value);
+		return value;
+	}
+	@LoxNative
+	static int length(Object collection) {
+		if(collection instanceof LoxMap) return ((LoxMap)collection).length();
+		return list(collection).length();
+	}
+	private static LoxList list(Object object) {
+		if(object instanceof LoxList) return (LoxList)object;
+		throw new RuntimeError(null,"Expected a list or a map.");
+	}
+	private static Object key(Object key) {
+		if(LoxMap.isValidKey(key)) return key;
+		throw new RuntimeError(null,"Map keys must be numbers, strings, booleans, nil or instances.");
+	}
+	private static int index(LoxList list,Object index) {
+		if(!(index instanceof Double)) throw new RuntimeError(null,"List index must be a number.");
+		double value=(double)index;
+		if(value!=Math.floor(value) || value<0 || value>=list.length()) {
+			throw new RuntimeError(null,"List index out of range.");
+		}
+		return (int)value;
+	}
+}
@@ -0,0 +1,62 @@
+package com.craftinginterpreters.jlox;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//The concurrent module, for running Lox functions concurrently:
+//concurrent.spawn(fn) runs fn on its own thread and returns a task, concurrent.join(task) waits for its result,
+//concurrent.channel(capacity) makes a bounded channel, send(channel,value) and receive(channel) block as needed.
+//Tasks run on virtual threads when the JVM has them (21+), otherwise on a pool of daemon platform threads.
+final class Concurrency {
+	private Concurrency() {}
+
+	private static final ExecutorService executor=createExecutor();
+
+	private static ExecutorService createExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}catch(NoSuchMethodException|IllegalAccessException|InvocationTargetException e) {
+			return Executors.newCachedThreadPool(runnable->{
+				Thread thread=new Thread(runnable,"lox-task");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+	@LoxNative
+	static LoxTask spawn(Interpreter interpreter,LoxCallable function) {
+		if(function.arity()!=0) {
+			throw new RuntimeError(null,"Spawned function can't take arguments.");
+		}
+		Interpreter task=new Interpreter(interpreter);
+		return new LoxTask(function.toString(),executor.submit(()->{
+			try {
+				return function.call0(task);
+			}finally {
+				//What the task printed may be all that's left to flush, the run can have returned already.
+				task.out.flush();
+				task.publishMetrics();
+			}
+		}));
+	}
+	@LoxNative
+	static Object join(Interpreter interpreter,LoxTask task) {
+		return task.join(interpreter.cancellation);
+	}
+	@LoxNative
+	static LoxChannel channel(double capacity) {
+		if(capacity<1 || capacity!=Math.floor(capacity) || capacity>Integer.MAX_VALUE) {
+			throw new RuntimeError(null,"Channel capacity must be a positive integer.");
+		}
+		return new LoxChannel((int)capacity);
+	}
+	@LoxNative
+	static void send(Interpreter interpreter,LoxChannel channel,Object value) {
+		channel.send(value,interpreter.cancellation);
+	}
+	@LoxNative
+	static Object receive(Interpreter interpreter,LoxChannel channel) {
+		return channel.receive(interpreter.cancellation);
+	}
+}
@@ -0,0 +1,111 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Statement and branch coverage of one execution, see Interpreter.cover.
+//The closure engine converts the program again with a counter in front of every statement and on both ways out of
+//every if and every and/or. Each counter is a LongAdder the converted code holds on to, so counting is an increment
+//with no lookups, and tasks spawned by the script count into the same counters without losing any.
+//The counters get dense ids during conversion, which is also when the line of each is noted.
+//Nothing is counted for programs that run without it. Inlining is off in covered code, an inlined call would skip
+//the counters in the function.
+final class Coverage {
+	//Incremented by the converted code of the interpreter being covered and its tasks, read once it is done.
+	private LongAdder[] hits=new LongAdder[64];
+	private int[] lines=new int[64];
+	private boolean[] branches=new boolean[64];
+	private int size=0;
+	private final Map<Program,ClosureProgram> converted=new IdentityHashMap<>();
+
+	synchronized ClosureProgram convert(Program program) {
+		return converted.computeIfAbsent(program,key->ClosureProgram.compile(key,this));
+	}
+	//A counter for a statement starting on line.
+	int statement(int line) {
+		return add(line,false);
+	}
+	//Two counters for a branch on line, taken and not taken, the second at the returned id+1.
+	int branch(int line) {
+		int id=add(line,true);
+		add(line,true);
+		return id;
+	}
+	private int add(int line,boolean branch) {
+		if(size==hits.length) {
+			hits=Arrays.copyOf(hits,size*2);
+			lines=Arrays.copyOf(lines,size*2);
+			branches=Arrays.copyOf(branches,size*2);
+		}
+		hits[size]=new LongAdder();
+		lines[size]=line;
+		branches[size]=branch;
+		return size++;
+	}
+	LongAdder counter(int id) {
+		return hits[id];
+	}
+	//LCOV tracefile for source: the executions of each line, the most of any statement starting on it, and both
+	//ways of every branch, '-' for a branch whose condition never ran.
+	void writeLcov(Path path,String source) throws IOException {
+		Map<Integer,Long> lineHits=lineHits();
+		Map<Integer,Integer> blocks=new TreeMap<>();
+		try(PrintWriter out=new PrintWriter(Files.newBufferedWriter(path,StandardCharsets.UTF_8))) {
+			out.println("TN:");
+			out.println("SF:"+source);
+			for(Map.Entry<Integer,Long> entry:lineHits.entrySet()) {
+				out.println("DA:"+entry.getKey()+","+entry.getValue());
+			}
+			for(int id=0;id<size;id+=branches[id]?2:1) {
+				if(!branches[id]) continue;
+				int line=lines[id];
+				int block=blocks.merge(line,1,Integer::sum)-1;
+				boolean ran=hits[id].sum()+hits[id+1].sum()>0;
+				for(int way=0;way<2;way++) {
+					out.println("BRDA:"+line+","+block+","+way+","+(ran?Long.toString(hits[id+way].sum()):"-"));
+				}
+			}
+			out.println("BRF:"+branchWays(false));
+			out.println("BRH:"+branchWays(true));
+			out.println("LF:"+lineHits.size());
+			out.println("LH:"+linesHit(lineHits));
+			out.println("end_of_record");
+		}
+	}
+	void printSummary(PrintStream out) {
+		Map<Integer,Long> lineHits=lineHits();
+		out.println("Lines covered: "+linesHit(lineHits)+"/"+lineHits.size()
+			+", branches covered: "+branchWays(true)+"/"+branchWays(false));
+	}
+	//Times each line ran, the most any statement starting on it ran. Also read by the TestRunner.
+	Map<Integer,Long> lineHits() {
+		Map<Integer,Long> lineHits=new TreeMap<>();
+		for(int id=0;id<size;id++) {
+			if(!branches[id]) lineHits.merge(lines[id],hits[id].sum(),Math::max);
+		}
+		return lineHits;
+	}
+	private static int linesHit(Map<Integer,Long> lineHits) {
+		int hit=0;
+		for(long count:lineHits.values()) {
+			if(count>0) hit++;
+		}
+		return hit;
+	}
+	private int branchWays(boolean takenOnly) {
+		int ways=0;
+		for(int id=0;id<size;id++) {
+			if(branches[id] && (!takenOnly || hits[id].sum()>0)) ways++;
+		}
+		return ways;
+	}
+}
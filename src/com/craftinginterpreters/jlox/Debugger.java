@@ -0,0 +1,154 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.craftinginterpreters.jlox.ClosureProgram.Action;
+import com.craftinginterpreters.jlox.ClosureProgram.Site;
+
+//Line breakpoints and stepping for scripts run by the closure engine, see Interpreter.debug.
+//Nothing is checked on the normal path. The debugger swaps a wrapper in at the sites it needs to see, the statements
+//starting on a breakpoint's line or every statement while a step is pending, and swaps the statements back once it
+//doesn't need them any more. Without breakpoints or a step the converted code runs exactly as it does undebugged.
+//The swapping happens in a conversion of each program of the debugger's own, like Coverage has, never in the one
+//the Program shares with every other execution of it.
+//The handler runs on the interpreter thread while the script is suspended, it looks at the Suspension and says
+//how to go on. Breakpoints can be set and cleared from any thread, tasks spawned by the script aren't debugged.
+final class Debugger {
+	enum Resume {
+		CONTINUE,
+		//Stop at the next statement, in a function it calls if it calls one.
+		STEP_IN,
+		//Stop at the next statement in this function or the ones it returns to.
+		STEP_OVER,
+		//Stop at the next statement after this function returns.
+		STEP_OUT
+	}
+	interface Handler {
+		Resume suspended(Suspension suspension);
+	}
+
+	//The state of the script where it stopped, only valid while the handler runs.
+	static final class Suspension {
+		final int line;
+		private final Interpreter interpreter;
+
+		private Suspension(int line,Interpreter interpreter){
+			this.line=line;
+			this.interpreter=interpreter;
+		}
+		//Names of the functions being executed, innermost first, ending with the script.
+		List<String> stack() {
+			List<String> frames=new ArrayList<>(List.of(interpreter.callStack.snapshot()));
+			Collections.reverse(frames);
+			return frames;
+		}
+		//Variables of each scope by name, innermost first, ending with the globals.
+		List<Map<String,Object>> scopes() {
+			List<Map<String,Object>> scopes=new ArrayList<>();
+			for(Environment scope=interpreter.environment;scope!=null;scope=scope.enclosing) {
+				scopes.add(scope.variables());
+			}
+			return scopes;
+		}
+	}
+
+	private final Handler handler;
+	private final Set<Integer> breakpoints=new HashSet<>();
+	private final Map<Program,ClosureProgram> converted=new IdentityHashMap<>();
+	private final List<ClosureProgram> programs=new ArrayList<>();
+	private final List<Interpreter> interpreters=new ArrayList<>();
+	//The wrappers swapped in, by site.
+	private final Map<Site,Action> wrappers=new IdentityHashMap<>();
+	//The pending step and the call depth it was requested at, null when not stepping.
+	private Resume step;
+	private int stepDepth;
+
+	Debugger(Handler handler){
+		this.handler=handler;
+	}
+	synchronized void setBreakpoint(int line) {
+		if(breakpoints.add(line)) patch();
+	}
+	synchronized void clearBreakpoint(int line) {
+		if(breakpoints.remove(line)) patch();
+	}
+	//Called by Interpreter.debug.
+	synchronized void debugging(Interpreter interpreter) {
+		interpreters.add(interpreter);
+	}
+	//The debugger's own conversion of program.
+	synchronized ClosureProgram convert(Program program) {
+		return converted.computeIfAbsent(program,ClosureProgram::compile);
+	}
+	//Called by the interpreter for every program it runs while debugged.
+	synchronized void attach(ClosureProgram program) {
+		for(ClosureProgram attached:programs) {
+			if(attached==program) return;
+		}
+		programs.add(program);
+		patch();
+	}
+	//Puts back every statement this debugger swapped and stops debugging the interpreters it was debugging,
+	//their next runs use the shared conversions again.
+	synchronized void detach() {
+		for(Site site:wrappers.keySet()) {
+			site.restore();
+		}
+		wrappers.clear();
+		programs.clear();
+		converted.clear();
+		for(Interpreter interpreter:interpreters) {
+			if(interpreter.debugger==this) interpreter.debugger=null;
+		}
+		interpreters.clear();
+	}
+	//Swaps wrappers in at exactly the sites that need one now and the statements back everywhere else.
+	private void patch() {
+		for(ClosureProgram program:programs) {
+			for(Site site:program.sites) {
+				boolean needed=step!=null || breakpoints.contains(site.line);
+				Action wrapper=wrappers.get(site);
+				if(needed && wrapper==null) {
+					wrapper=wrap(site);
+					wrappers.put(site,wrapper);
+					site.replace(wrapper);
+				}else if(!needed && wrapper!=null) {
+					wrappers.remove(site);
+					site.restore();
+				}
+			}
+		}
+	}
+	private Action wrap(Site site) {
+		return interpreter->{
+			if(interpreter.debugger==this) reached(interpreter,site.line);
+			site.statement.execute(interpreter);
+		};
+	}
+	private void reached(Interpreter interpreter,int line) {
+		int depth=interpreter.callStack.depth();
+		if(!shouldStop(line,depth)) return;
+		Resume resume=handler.suspended(new Suspension(line,interpreter));
+		synchronized(this) {
+			step=resume==Resume.CONTINUE?null:resume;
+			stepDepth=depth;
+			patch();
+		}
+	}
+	private synchronized boolean shouldStop(int line,int depth) {
+		if(breakpoints.contains(line)) return true;
+		if(step==null) return false;
+		switch(step) {
+		case STEP_IN: return true;
+		case STEP_OVER: return depth<=stepDepth;
+		case STEP_OUT: return depth<stepDepth;
+		default: return false;
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package com.craftinginterpreters.jlox;
+
+//The ways an Interpreter can run a Program.
+enum Engine {
+	//Walks the Expr and Stmt trees with the visitors.
+	TREE,
+	//Walks the flat encoding from FlatProgram, see FlatInterpreter.
+	FLAT,
+	//Calls the lambdas from ClosureProgram.
+	CLOSURE
+}
@@ -2,17 +2,32 @@ package com.craftinginterpreters.jlox;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 //Environment is basically a data structure, that bounds the variable to a context.
 //fun fact: before lisp, parenthesis and environment was considered the same thing.
+//The global environment is shared by every task spawned from a script, so it is a concurrent map. It holds a Cell
+//per global, created undefined the first time a name is referenced before its definition, and the interpreter keeps
+//the cells it has looked up in an array indexed by the slot the Resolver gave each global name. Local environments are only handed to other threads through concurrent.spawn(), which happens-before
+//the task starts, racing on a captured local from two tasks is a data race just like in Java.
 class Environment{
+	//ConcurrentHashMap can't hold null, so nil is stored as this marker in every environment and instance.
+	static final Object NIL=new Object();
+	//Value of the cell of a global that hasn't been defined yet.
+	static final Object UNDEFINED=new Object();
 	final Environment enclosing;
-	private final Map<String, Object> values=new HashMap<>();
+	private final Map<String, Object> values;
+	//Set once a closure has captured one of our variables, only then can values hold a Cell. Always set for globals.
+	private boolean hasCells;
 	Environment(){
 		enclosing=null;
+		values=new ConcurrentHashMap<>();
+		hasCells=true;
 	}
 	Environment(Environment enclosing){
 		this.enclosing=enclosing;
+		values=new HashMap<>();
 	}
 	//The map uses name as key instead of Token to represent binded value, because token is a unit of code at a specific place in source text.
 	//but when it comes to looking up variables, all identifier tokens with same name should refer to the same variable. Using raw string we 
@@ -21,30 +36,49 @@ class Environment{
 	//reassigned.
 	//If we would've assigned the error arising here as syntax error then recursion would've been a real big headache.
 	Object get(Token name) {
-		if(values.containsKey(name.lexeme)) {
-			return values.get(name.lexeme);
+		Object value=values.get(name.lexeme);
+		if(value!=null) {
+			value=unmask(value);
+			if(value!=UNDEFINED) return value;
 		}
 		if(enclosing!=null) return enclosing.get(name);
-		throw new RuntimeError(name, "Undefined variable '"+name.lexeme+"'.");
+		throw undefined(name);
 	}
 	
 	void define(String name,Object value) {
-		values.put(name, value);
+		if(enclosing==null) {
+			global(name).value=value;
+			return;
+		}
+		values.put(name, mask(value));
 	}
 	//We throw runtime error we try to assign value to key that doesn't exist.
 	void assign(Token name,Object value) {
-		if(values.containsKey(name.lexeme)) {
-			values.put(name.lexeme, value);
-			return;
-		}
-		if(enclosing!=null) {
-			enclosing.assign(name, value);
+		if(hasCells && set(name.lexeme,value)) return;
+		if(enclosing==null) throw undefined(name);
+		if(values.replace(name.lexeme, mask(value))!=null) {
 			return;
 		}
-		throw new RuntimeError(name,"Undefined variable '"+name.lexeme+"'.");
+		enclosing.assign(name, value);
+	}
+	static RuntimeError undefined(Token name) {
+		return new RuntimeError(name,"Undefined variable '"+name.lexeme+"'.");
+	}
+	//The cell of a global, called on the global environment only.
+	Cell global(String name) {
+		return (Cell)values.computeIfAbsent(name,key->new Cell(UNDEFINED));
 	}
 	Object getAt(int distance,String name) {
-		return ancestor(distance).values.get(name);
+		return unmask(ancestor(distance).values.get(name));
+	}
+	//Copy of the variables defined here by name, for the debugger. Globals referenced but not defined yet are left out.
+	Map<String,Object> variables() {
+		Map<String,Object> variables=new TreeMap<>();
+		for(Map.Entry<String,Object> entry:values.entrySet()) {
+			Object value=unmask(entry.getValue());
+			if(value!=UNDEFINED) variables.put(entry.getKey(),value);
+		}
+		return variables;
 	}
 	Environment ancestor(int distance) {
 		Environment environment=this;
@@ -54,6 +88,45 @@ class Environment{
 		return environment;
 	}
 	void assignAt(int distance,Token name,Object value) {
-		ancestor(distance).values.put(name.lexeme, value);
+		Environment environment=ancestor(distance);
+		if(environment.hasCells && environment.set(name.lexeme,value)) return;
+		environment.values.put(name.lexeme, mask(value));
+	}
+	//Makes name in from and here the same variable, see Captures.
+	void capture(Environment from,String name) {
+		values.put(name,from.cell(name));
+		hasCells=true;
+	}
+	//Boxes the variable the first time it is captured, from then on the scope and its closures share the box.
+	private Cell cell(String name) {
+		Object value=values.get(name);
+		if(value instanceof Cell) return (Cell)value;
+		Cell cell=new Cell(unmask(value));
+		values.put(name,cell);
+		hasCells=true;
+		return cell;
+	}
+	private boolean set(String name,Object value) {
+		Object current=values.get(name);
+		if(!(current instanceof Cell)) return false;
+		Cell cell=(Cell)current;
+		if(cell.value==UNDEFINED) return false;
+		cell.value=value;
+		return true;
+	}
+	static Object mask(Object value) {
+		return value==null?NIL:value;
+	}
+	private static Object unmask(Object value) {
+		if(value==NIL) return null;
+		if(value instanceof Cell) return ((Cell)value).value;
+		return value;
+	}
+	//A captured local or a global, holds the value itself so nil needs no marker.
+	static final class Cell {
+		Object value;
+		Cell(Object value){
+			this.value=value;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.PrintStream;
+
+//Collects the errors of one compilation or execution. Used to be static state in Lox,
+//which meant two scripts couldn't be compiled or run at the same time.
+class ErrorReporter {
+	private final PrintStream err;
+	boolean hadError=false;
+	boolean hadRuntimeError=false;
+
+	ErrorReporter(PrintStream err){
+		this.err=err;
+	}
+	void error(int current,int line, String message) {
+		report(current%line,line, "",message);
+	}
+	void error(Token token,String message) {
+		if(token.type==TokenType.EOF) {
+			report(token.line," at end",message);
+		}else {
+			report(token.line, " at '"+token.lexeme+"'",message);
+		}
+	}
+	void runtimeError(RuntimeError error) {
+		err.println(error.getMessage()+"\n[line"+error.token.line+"]");
+		if(error.loxTrace!=null) err.print(error.loxTrace);
+		hadRuntimeError=true;
+	}
+	private void report(int pos,int line,String where,String message) {
+		err.println(
+				"[line"+line+"][At Position "+pos+"] Error"+where+": "+ message);
+		hadError=true;
+	}
+	private void report(int line,String where,String message) {
+		err.println(
+				"[line"+line+"] Error"+where+": "+ message);
+		hadError=true;
+	}
+}
@@ -0,0 +1,333 @@
+package com.craftinginterpreters.jlox;
+
+import static com.craftinginterpreters.jlox.FlatProgram.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//Runs a FlatProgram. It is the same language as the tree walker, node for node, on the same execution context:
+//the Interpreter's environment, globals, call stack, budget and caches, so functions from both engines mix freely.
+//Resolution is baked into the code, there are no locals lookups and no switching on token types.
+//One per Interpreter, it follows calls into functions lowered in other programs (earlier prompt lines).
+final class FlatInterpreter {
+	private final Interpreter interpreter;
+	private int[] code;
+	private Object[] constants;
+
+	FlatInterpreter(Interpreter interpreter){
+		this.interpreter=interpreter;
+	}
+	void execute(FlatProgram program) {
+		enter(program);
+		for(int statement:program.statements) {
+			execute(statement);
+		}
+	}
+	//See Interpreter.run.
+	Object run(FlatProgram program) {
+		enter(program);
+		int[] statements=program.statements;
+		int last=statements.length-1;
+		for(int i=0;i<last;i++) {
+			execute(statements[i]);
+		}
+		if(last<0) return null;
+		int tail=statements[last];
+		if(code[tail]==EXPRESSION) {
+			interpreter.statementsExecuted++;
+			return evaluate(code[tail+1]);
+		}
+		execute(tail);
+		return null;
+	}
+	private void enter(FlatProgram program) {
+		code=program.code;
+		constants=program.constants;
+	}
+	void executeBody(FlatFunction function,Environment environment) {
+		int[] previousCode=code;
+		Object[] previousConstants=constants;
+		Environment previous=interpreter.environment;
+		try {
+			enter(function.program);
+			interpreter.environment=environment;
+			sequence(function.body);
+		}finally {
+			interpreter.environment=previous;
+			code=previousCode;
+			constants=previousConstants;
+		}
+	}
+	private void sequence(int node) {
+		int count=code[node+1];
+		for(int i=0;i<count;i++) {
+			execute(code[node+2+i]);
+		}
+	}
+	private Token token(int index) {
+		return (Token)constants[index];
+	}
+	private void execute(int node) {
+		interpreter.statementsExecuted++;
+		interpreter.fuel--;
+		switch(code[node]) {
+		case EXPRESSION:
+			evaluate(code[node+1]);
+			return;
+		case PRINT:
+			interpreter.out.println(evaluate(code[node+1]));
+			return;
+		case DEFINE: {
+			int initializer=code[node+1];
+			Object value=initializer<0?null:evaluate(initializer);
+			interpreter.environment.define((String)constants[code[node+2]],value);
+			return;
+		}
+		case BLOCK: {
+			interpreter.memory-=Budget.ENVIRONMENT_BYTES;
+			interpreter.environmentsAllocated++;
+			Environment previous=interpreter.environment;
+			try {
+				interpreter.environment=new Environment(previous);
+				sequence(node);
+			}finally {
+				interpreter.environment=previous;
+			}
+			return;
+		}
+		case SEQUENCE:
+			sequence(node);
+			return;
+		case IF:
+			if(Interpreter.isTruthy(evaluate(code[node+1]))) {
+				execute(code[node+2]);
+			}else if(code[node+3]>=0) {
+				execute(code[node+3]);
+			}
+			return;
+		case WHILE: {
+			int condition=code[node+1];
+			int body=code[node+2];
+			Token keyword=token(code[node+3]);
+			while(Interpreter.isTruthy(evaluate(condition))) {
+				execute(body);
+				interpreter.tick(keyword);
+			}
+			return;
+		}
+		case FUNCTION: {
+			FlatFunction function=(FlatFunction)constants[code[node+1]];
+			Environment environment=interpreter.environment;
+			Token name=function.name();
+			environment.define(name.lexeme,null);
+			environment.assignAt(0,name,new LoxFunction(function,false,function.captures.close(environment,interpreter.globals)));
+			return;
+		}
+		case CLASS:
+			declareClass(node);
+			return;
+		case RETURN: {
+			int value=code[node+1];
+			throw new Returnval(value<0?null:evaluate(value));
+		}
+		default:
+			throw new IllegalStateException("Not a statement: "+code[node]);
+		}
+	}
+	//See Interpreter.visitClassStmt.
+	private void declareClass(int node) {
+		Token name=token(code[node+1]);
+		Object superclass=null;
+		if(code[node+2]>=0) {
+			superclass=evaluate(code[node+2]);
+			if(!(superclass instanceof LoxClass)) {
+				throw new RuntimeError(token(code[node+3]),"Superclass must be a class.");
+			}
+		}
+		interpreter.environment.define(name.lexeme,null);
+		if(superclass!=null) {
+			interpreter.environment=new Environment(interpreter.environment);
+			interpreter.environment.define("super",superclass);
+		}
+		Map<String,LoxFunction> methods=new HashMap<>();
+		int count=code[node+4];
+		for(int i=0;i<count;i++) {
+			FlatFunction method=(FlatFunction)constants[code[node+5+i]];
+			String methodName=method.name().lexeme;
+			Environment closure=method.captures.close(interpreter.environment,interpreter.globals);
+			methods.put(methodName,new LoxFunction(method,methodName.equals("init"),closure));
+		}
+		LoxClass klass=new LoxClass(name.lexeme,(LoxClass)superclass,methods);
+		if(superclass!=null) {
+			interpreter.environment=interpreter.environment.enclosing;
+		}
+		interpreter.environment.assign(name,klass);
+	}
+	private Object evaluate(int node) {
+		switch(code[node]) {
+		case CONSTANT:
+			return constants[code[node+1]];
+		case GET_LOCAL:
+			return interpreter.environment.getAt(code[node+1],(String)constants[code[node+2]]);
+		case GET_GLOBAL:
+			return interpreter.readGlobal(code[node+1],token(code[node+2]));
+		case SET_LOCAL: {
+			Object value=evaluate(code[node+1]);
+			interpreter.environment.assignAt(code[node+2],token(code[node+3]),value);
+			return value;
+		}
+		case SET_GLOBAL: {
+			Object value=evaluate(code[node+1]);
+			interpreter.writeGlobal(code[node+2],token(code[node+3]),value);
+			return value;
+		}
+		case ADD: {
+			Object left=evaluate(code[node+1]);
+			Object right=evaluate(code[node+2]);
+			if(left instanceof Double && right instanceof Double) {
+				return (double)left+(double)right;
+			}
+			if(left instanceof String && right instanceof String) {
+				String result=(String)left+(String)right;
+				interpreter.allocate(token(code[node+3]),result);
+				return result;
+			}
+			throw new RuntimeError(token(code[node+3]),"Operands must be two numbers or two strings");
+		}
+		case SUBTRACT:
+		case MULTIPLY:
+		case DIVIDE:
+		case GREATER:
+		case GREATER_EQUAL:
+		case LESS:
+		case LESS_EQUAL:
+			return arithmetic(node);
+		case EQUAL:
+			return Interpreter.isEqual(evaluate(code[node+1]),evaluate(code[node+2]));
+		case NOT_EQUAL:
+			return !Interpreter.isEqual(evaluate(code[node+1]),evaluate(code[node+2]));
+		case NEGATE: {
+			Object operand=evaluate(code[node+1]);
+			Interpreter.checkNumberOperand(token(code[node+2]),operand);
+			return -(double)operand;
+		}
+		case NOT:
+			return !Interpreter.isTruthy(evaluate(code[node+1]));
+		case AND: {
+			Object left=evaluate(code[node+1]);
+			if(!Interpreter.isTruthy(left)) return left;
+			return evaluate(code[node+2]);
+		}
+		case OR: {
+			Object left=evaluate(code[node+1]);
+			if(Interpreter.isTruthy(left)) return left;
+			return evaluate(code[node+2]);
+		}
+		case CALL:
+			return call(node);
+		case GET_PROPERTY: {
+			Object object=evaluate(code[node+1]);
+			Token name=token(code[node+2]);
+			if(object instanceof LoxInstance) return ((LoxInstance)object).get(name);
+			if(object instanceof NativeModule) return ((NativeModule)object).get(name);
+			throw new RuntimeError(name,"Only instances have properties.");
+		}
+		case SET_PROPERTY: {
+			Object object=evaluate(code[node+1]);
+			Token name=token(code[node+3]);
+			if(!(object instanceof LoxInstance)) {
+				throw new RuntimeError(name,"Only instances have fields.");
+			}
+			Object value=evaluate(code[node+2]);
+			((LoxInstance)object).set(name,value);
+			return value;
+		}
+		case SUPER: {
+			int distance=code[node+1];
+			LoxFunction method=interpreter.superMethod(token(code[node+2]),distance);
+			return method.bind((LoxInstance)interpreter.environment.getAt(distance-1,"this"));
+		}
+		default:
+			throw new IllegalStateException("Not an expression: "+code[node]);
+		}
+	}
+	private Object arithmetic(int node) {
+		Object left=evaluate(code[node+1]);
+		Object right=evaluate(code[node+2]);
+		Interpreter.checkNumberOperands(token(code[node+3]),left,right);
+		double a=(double)left;
+		double b=(double)right;
+		switch(code[node]) {
+		case SUBTRACT: return a-b;
+		case MULTIPLY: return a*b;
+		case DIVIDE: return a/b;
+		case GREATER: return a>b;
+		case GREATER_EQUAL: return a>=b;
+		case LESS: return a<b;
+		default: return a<=b;
+		}
+	}
+	//See Interpreter.visitCallExpr.
+	private void evaluateAll(int arguments,int count) {
+		for(int i=0;i<count;i++) {
+			evaluate(code[arguments+i]);
+		}
+	}
+	//See Interpreter.visitCallExpr.
+	private Object call(int node) {
+		int calleeNode=code[node+1];
+		Token paren=token(code[node+2]);
+		int count=code[node+3];
+		int arguments=node+4;
+		Object callee;
+		LoxInstance receiver=null;
+		if(code[calleeNode]==SUPER) {
+			int distance=code[calleeNode+1];
+			callee=interpreter.superMethod(token(code[calleeNode+2]),distance);
+			receiver=(LoxInstance)interpreter.environment.getAt(distance-1,"this");
+		}else {
+			callee=evaluate(calleeNode);
+		}
+		if(!(callee instanceof LoxCallable)) {
+			evaluateAll(arguments,count);
+			throw new RuntimeError(paren,"Can only call functions and classes.");
+		}
+		LoxCallable function=(LoxCallable)callee;
+		if(count!=function.arity()) {
+			evaluateAll(arguments,count);
+			throw new RuntimeError(paren,"Expected "+function.arity()+" arguements but go "+count+".");
+		}
+		interpreter.callStack.line(paren.line);
+		interpreter.callsMade++;
+		interpreter.tick(paren);
+		try {
+			if(function instanceof LoxFunction) {
+				LoxFunction loxFunction=(LoxFunction)function;
+				Environment frame=receiver==null?loxFunction.frame():loxFunction.frame(receiver);
+				for(int i=0;i<count;i++) {
+					frame.define(loxFunction.parameter(i),evaluate(code[arguments+i]));
+				}
+				return loxFunction.invoke(interpreter,frame);
+			}
+			Object result;
+			switch(count) {
+			case 0: result=function.call0(interpreter); break;
+			case 1: result=function.call1(interpreter,evaluate(code[arguments])); break;
+			case 2: result=function.call2(interpreter,evaluate(code[arguments]),evaluate(code[arguments+1])); break;
+			case 3: result=function.call3(interpreter,evaluate(code[arguments]),evaluate(code[arguments+1]),evaluate(code[arguments+2])); break;
+			case 4: result=function.call4(interpreter,evaluate(code[arguments]),evaluate(code[arguments+1]),evaluate(code[arguments+2]),evaluate(code[arguments+3])); break;
+			default:
+				Object[] values=new Object[count];
+				for(int i=0;i<count;i++) {
+					values[i]=evaluate(code[arguments+i]);
+				}
+				result=function.call(interpreter,values);
+			}
+			if(result instanceof String) interpreter.allocate(paren,(String)result);
+			return result;
+		}catch(RuntimeError error) {
+			if(error.token==null) throw new RuntimeError(paren,error.getMessage());
+			throw error;
+		}
+	}
+}
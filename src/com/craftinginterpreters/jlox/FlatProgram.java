@@ -0,0 +1,309 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//A resolved Program lowered into one int array, see FlatInterpreter for the engine that runs it.
+//Every node is an opcode followed by its operands: offsets of child nodes, indices into constants and resolved
+//scope distances or global slots. Children are emitted before their parent, so a node and its subtree sit next to
+//each other and evaluating it walks forward through a few cache lines instead of chasing List and Token objects.
+//A missing child (no else branch, no initializer) is -1. Grouping has no node of its own.
+//Like Program it never changes once built and can be shared by any number of interpreters.
+final class FlatProgram {
+	//Expressions.
+	static final int CONSTANT=0;		//constant
+	static final int GET_LOCAL=1;		//distance, name
+	static final int GET_GLOBAL=2;		//slot, token
+	static final int SET_LOCAL=3;		//value, distance, token
+	static final int SET_GLOBAL=4;		//value, slot, token
+	static final int ADD=5;				//left, right, operator; SUBTRACT to LESS_EQUAL have the same operands
+	static final int SUBTRACT=6;
+	static final int MULTIPLY=7;
+	static final int DIVIDE=8;
+	static final int GREATER=9;
+	static final int GREATER_EQUAL=10;
+	static final int LESS=11;
+	static final int LESS_EQUAL=12;
+	static final int EQUAL=13;			//left, right
+	static final int NOT_EQUAL=14;		//left, right
+	static final int NEGATE=15;			//operand, operator
+	static final int NOT=16;			//operand
+	static final int AND=17;			//left, right
+	static final int OR=18;				//left, right
+	static final int CALL=19;			//callee, paren, count, arguments...
+	static final int GET_PROPERTY=20;	//object, name
+	static final int SET_PROPERTY=21;	//object, value, name
+	static final int SUPER=22;			//distance, method
+	//Statements.
+	static final int EXPRESSION=23;		//expression
+	static final int PRINT=24;			//expression
+	static final int DEFINE=25;			//initializer, name
+	static final int BLOCK=26;			//count, statements...
+	static final int IF=27;				//condition, then, else
+	static final int WHILE=28;			//condition, body, keyword
+	static final int FUNCTION=29;		//FlatFunction
+	static final int CLASS=30;			//name, superclass, superclass name, count, FlatFunction...
+	static final int RETURN=31;			//value
+	static final int SEQUENCE=32;		//count, statements..., a block without a scope of its own
+
+	final int[] code;
+	final Object[] constants;
+	//The top-level statements.
+	final int[] statements;
+
+	private FlatProgram(int[] code,Object[] constants,int[] statements) {
+		this.code=code;
+		this.constants=constants;
+		this.statements=statements;
+		for(Object constant:constants) {
+			if(constant instanceof FlatFunction) ((FlatFunction)constant).program=this;
+		}
+	}
+	static FlatProgram lower(Program program) {
+		LoxEvents.Phase phase=LoxEvents.Phase.start("lower");
+		Lowering lowering=new Lowering(program);
+		int[] statements=new int[program.statements.size()];
+		for(int i=0;i<statements.length;i++) {
+			statements[i]=lowering.lower(program.statements.get(i));
+		}
+		FlatProgram flat=new FlatProgram(Arrays.copyOf(lowering.code,lowering.size),lowering.constants.toArray(),statements);
+		phase.finish();
+		return flat;
+	}
+
+	//A function declaration with its body lowered to a SEQUENCE. Only the name and the parameter names are kept
+	//from the declaration, so the flat program doesn't hold on to the tree.
+	static final class FlatFunction implements LoxFunction.Body {
+		private final Token name;
+		private final String[] parameters;
+		final Captures captures;
+		final int body;
+		//Set by the FlatProgram constructor, the function belongs to it.
+		FlatProgram program;
+
+		FlatFunction(Stmt.Function declaration,Captures captures,int body){
+			this.name=declaration.name;
+			this.parameters=new String[declaration.params.size()];
+			for(int i=0;i<parameters.length;i++) {
+				parameters[i]=declaration.params.get(i).lexeme;
+			}
+			this.captures=captures;
+			this.body=body;
+		}
+		@Override
+		public Token name() {
+			return name;
+		}
+		@Override
+		public int arity() {
+			return parameters.length;
+		}
+		@Override
+		public String parameter(int index) {
+			return parameters[index];
+		}
+		@Override
+		public void execute(Interpreter interpreter,Environment environment) {
+			interpreter.flat().executeBody(this,environment);
+		}
+	}
+
+	private static final class Lowering implements Expr.Visitor<Integer>,Stmt.Visitor<Integer> {
+		private final Program program;
+		private int[] code=new int[256];
+		private int size=0;
+		private final List<Object> constants=new ArrayList<>();
+		//Literals and names are stored once, tokens and declarations are all different anyway.
+		private final Map<Object,Integer> shared=new HashMap<>();
+		private int nil=-1;
+
+		Lowering(Program program){
+			this.program=program;
+		}
+		int lower(Stmt stmt) {
+			return stmt.accept(this);
+		}
+		private int lower(Expr expr) {
+			return expr.accept(this);
+		}
+		private int emit(int... node) {
+			if(size+node.length>code.length) code=Arrays.copyOf(code,Math.max(code.length*2,size+node.length));
+			int offset=size;
+			System.arraycopy(node,0,code,size,node.length);
+			size+=node.length;
+			return offset;
+		}
+		private int constant(Object value) {
+			constants.add(value);
+			return constants.size()-1;
+		}
+		private int shared(Object value) {
+			if(value==null) {
+				if(nil<0) nil=constant(null);
+				return nil;
+			}
+			return shared.computeIfAbsent(value,this::constant);
+		}
+		private int distance(Expr expr) {
+			Integer distance=program.locals.get(expr);
+			if(distance==null) throw new IllegalStateException("Unresolved expression "+expr);
+			return distance;
+		}
+		private int sequence(int opcode,List<Stmt> statements) {
+			int[] node=new int[statements.size()+2];
+			node[0]=opcode;
+			node[1]=statements.size();
+			for(int i=0;i<statements.size();i++) {
+				node[i+2]=lower(statements.get(i));
+			}
+			return emit(node);
+		}
+		private int function(Stmt.Function function) {
+			int body=sequence(SEQUENCE,function.body);
+			Captures captures=program.captures.getOrDefault(function,Captures.NONE);
+			return constant(new FlatFunction(function,captures,body));
+		}
+		private int variable(Expr expr,Token name) {
+			int distance=distance(expr);
+			if(distance<0) return emit(GET_GLOBAL,-1-distance,constant(name));
+			return emit(GET_LOCAL,distance,shared(name.lexeme));
+		}
+		@Override
+		public Integer visitAssignExpr(Expr.Assign expr) {
+			int value=lower(expr.value);
+			int distance=distance(expr);
+			if(distance<0) return emit(SET_GLOBAL,value,-1-distance,constant(expr.name));
+			return emit(SET_LOCAL,value,distance,constant(expr.name));
+		}
+		@Override
+		public Integer visitBinaryExpr(Expr.Binary expr) {
+			int left=lower(expr.left);
+			int right=lower(expr.right);
+			switch(expr.operator.type) {
+			case EQUAL_EQUAL: return emit(EQUAL,left,right);
+			case BANG_EQUAL: return emit(NOT_EQUAL,left,right);
+			case PLUS: return emit(ADD,left,right,constant(expr.operator));
+			case MINUS: return emit(SUBTRACT,left,right,constant(expr.operator));
+			case STAR: return emit(MULTIPLY,left,right,constant(expr.operator));
+			case SLASH: return emit(DIVIDE,left,right,constant(expr.operator));
+			case GREATER: return emit(GREATER,left,right,constant(expr.operator));
+			case GREATER_EQUAL: return emit(GREATER_EQUAL,left,right,constant(expr.operator));
+			case LESS: return emit(LESS,left,right,constant(expr.operator));
+			case LESS_EQUAL: return emit(LESS_EQUAL,left,right,constant(expr.operator));
+			default: throw new IllegalStateException("Unexpected operator "+expr.operator);
+			}
+		}
+		@Override
+		public Integer visitCallExpr(Expr.Call expr) {
+			int callee=lower(expr.calle);
+			int[] node=new int[expr.arguments.size()+4];
+			node[0]=CALL;
+			node[1]=callee;
+			node[2]=constant(expr.paren);
+			node[3]=expr.arguments.size();
+			for(int i=0;i<expr.arguments.size();i++) {
+				node[i+4]=lower(expr.arguments.get(i));
+			}
+			return emit(node);
+		}
+		@Override
+		public Integer visitGetExpr(Expr.Get expr) {
+			int object=lower(expr.object);
+			return emit(GET_PROPERTY,object,constant(expr.name));
+		}
+		@Override
+		public Integer visitGroupingExpr(Expr.Grouping expr) {
+			return lower(expr.expression);
+		}
+		@Override
+		public Integer visitLiteralExpr(Expr.Literal expr) {
+			return emit(CONSTANT,shared(expr.value));
+		}
+		@Override
+		public Integer visitLogicalExpr(Expr.Logical expr) {
+			int left=lower(expr.left);
+			int right=lower(expr.right);
+			return emit(expr.operator.type==TokenType.OR?OR:AND,left,right);
+		}
+		@Override
+		public Integer visitSetExpr(Expr.Set expr) {
+			int object=lower(expr.object);
+			int value=lower(expr.value);
+			return emit(SET_PROPERTY,object,value,constant(expr.name));
+		}
+		@Override
+		public Integer visitSuperExpr(Expr.Super expr) {
+			return emit(SUPER,distance(expr),constant(expr.method));
+		}
+		@Override
+		public Integer visitThisExpr(Expr.This expr) {
+			return variable(expr,expr.keyword);
+		}
+		@Override
+		public Integer visitUnaryExpr(Expr.Unary expr) {
+			int operand=lower(expr.right);
+			if(expr.operator.type==TokenType.BANG) return emit(NOT,operand);
+			return emit(NEGATE,operand,constant(expr.operator));
+		}
+		@Override
+		public Integer visitVariableExpr(Expr.Variable expr) {
+			return variable(expr,expr.name);
+		}
+		@Override
+		public Integer visitBlockStmt(Stmt.Block stmt) {
+			return sequence(BLOCK,stmt.statments);
+		}
+		@Override
+		public Integer visitClassStmt(Stmt.Class stmt) {
+			int superclass=stmt.superclass==null?-1:lower(stmt.superclass);
+			int superclassName=stmt.superclass==null?-1:constant(stmt.superclass.name);
+			int[] node=new int[stmt.methods.size()+5];
+			node[0]=CLASS;
+			node[1]=constant(stmt.name);
+			node[2]=superclass;
+			node[3]=superclassName;
+			node[4]=stmt.methods.size();
+			for(int i=0;i<stmt.methods.size();i++) {
+				node[i+5]=function(stmt.methods.get(i));
+			}
+			return emit(node);
+		}
+		@Override
+		public Integer visitExpressionStmt(Stmt.Expression stmt) {
+			return emit(EXPRESSION,lower(stmt.expression));
+		}
+		@Override
+		public Integer visitFunctionStmt(Stmt.Function stmt) {
+			return emit(FUNCTION,function(stmt));
+		}
+		@Override
+		public Integer visitIfStmt(Stmt.If stmt) {
+			int condition=lower(stmt.condition);
+			int thenBranch=lower(stmt.thenBranch);
+			int elseBranch=stmt.elseBranch==null?-1:lower(stmt.elseBranch);
+			return emit(IF,condition,thenBranch,elseBranch);
+		}
+		@Override
+		public Integer visitPrintStmt(Stmt.Print stmt) {
+			return emit(PRINT,lower(stmt.expression));
+		}
+		@Override
+		public Integer visitReturnStmt(Stmt.Return stmt) {
+			return emit(RETURN,stmt.value==null?-1:lower(stmt.value));
+		}
+		@Override
+		public Integer visitVarStmt(Stmt.Var stmt) {
+			int initializer=stmt.initializer==null?-1:lower(stmt.initializer);
+			return emit(DEFINE,initializer,shared(stmt.name.lexeme));
+		}
+		@Override
+		public Integer visitWhileStmt(Stmt.While stmt) {
+			int condition=lower(stmt.condition);
+			int body=lower(stmt.body);
+			return emit(WHILE,condition,body,constant(stmt.keyword));
+		}
+	}
+}
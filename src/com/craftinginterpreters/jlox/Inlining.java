@@ -0,0 +1,167 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.List;
+import java.util.Map;
+
+import com.craftinginterpreters.jlox.ClosureProgram.ClosureFunction;
+
+//The body of a small function compiled for its call sites to evaluate in place of calling it, see ClosureProgram.
+//Only a body that is a single return of a small expression over literals, parameters, 'this' and globals qualifies,
+//reading properties and applying operators but making no calls, so an inlined function is never recursive.
+//The expression reads its parameters from an array and has no effect but charging string allocations, so it needs
+//no frame and no Returnval, and when it fails the call site can call the function for real to get the error the call
+//would have raised, with the function in its trace.
+final class Inlining {
+	private static final int MAX_NODES=16;
+	final ClosureFunction function;
+	private final Expression expression;
+
+	interface Expression {
+		Object evaluate(Interpreter interpreter,LoxInstance self,Object[] arguments);
+	}
+
+	private Inlining(ClosureFunction function,Expression expression) {
+		this.function=function;
+		this.expression=expression;
+	}
+	//Null if the function doesn't qualify.
+	static Inlining of(ClosureFunction function,Map<Expr,Integer> locals) {
+		Stmt.Function declaration=function.declaration;
+		if(function.captures!=Captures.NONE) return null;
+		if(function.method && declaration.name.lexeme.equals("init")) return null;
+		if(declaration.body.size()!=1 || !(declaration.body.get(0) instanceof Stmt.Return)) return null;
+		Expr value=((Stmt.Return)declaration.body.get(0)).value;
+		if(value==null) return null;
+		try {
+			return new Inlining(function,new Compiler(function,locals).compile(value));
+		}catch(Declined declined) {
+			return null;
+		}
+	}
+	Object evaluate(Interpreter interpreter,LoxInstance self,Object[] arguments) {
+		return expression.evaluate(interpreter,self,arguments);
+	}
+
+	private static final class Declined extends RuntimeException {
+		private static final long serialVersionUID=1L;
+		private static final Declined INSTANCE=new Declined();
+		private Declined() {
+			super(null,null,false,false);
+		}
+	}
+
+	private static final class Compiler implements Expr.Visitor<Expression> {
+		private final ClosureFunction function;
+		private final Map<Expr,Integer> locals;
+		private int nodes=0;
+
+		Compiler(ClosureFunction function,Map<Expr,Integer> locals){
+			this.function=function;
+			this.locals=locals;
+		}
+		Expression compile(Expr expr) {
+			if(++nodes>MAX_NODES) throw Declined.INSTANCE;
+			return expr.accept(this);
+		}
+		private int parameter(Token name) {
+			List<Token> params=function.declaration.params;
+			for(int i=params.size()-1;i>=0;i--) {
+				if(params.get(i).lexeme.equals(name.lexeme)) return i;
+			}
+			throw Declined.INSTANCE;
+		}
+		@Override
+		public Expression visitAssignExpr(Expr.Assign expr) {
+			throw Declined.INSTANCE;
+		}
+		@Override
+		public Expression visitBinaryExpr(Expr.Binary expr) {
+			Expression left=compile(expr.left);
+			Expression right=compile(expr.right);
+			ClosureProgram.Operator operator=ClosureProgram.operator(expr.operator);
+			return (interpreter,self,arguments)->operator.apply(interpreter,
+					left.evaluate(interpreter,self,arguments),right.evaluate(interpreter,self,arguments));
+		}
+		@Override
+		public Expression visitCallExpr(Expr.Call expr) {
+			throw Declined.INSTANCE;
+		}
+		@Override
+		public Expression visitGetExpr(Expr.Get expr) {
+			Expression object=compile(expr.object);
+			Token name=expr.name;
+			return (interpreter,self,arguments)->{
+				Object value=object.evaluate(interpreter,self,arguments);
+				if(value instanceof LoxInstance) return ((LoxInstance)value).get(name);
+				if(value instanceof NativeModule) return ((NativeModule)value).get(name);
+				throw new RuntimeError(name,"Only instances have properties.");
+			};
+		}
+		@Override
+		public Expression visitGroupingExpr(Expr.Grouping expr) {
+			return compile(expr.expression);
+		}
+		@Override
+		public Expression visitLiteralExpr(Expr.Literal expr) {
+			Object value=expr.value;
+			return (interpreter,self,arguments)->value;
+		}
+		@Override
+		public Expression visitLogicalExpr(Expr.Logical expr) {
+			Expression left=compile(expr.left);
+			Expression right=compile(expr.right);
+			if(expr.operator.type==TokenType.OR) {
+				return (interpreter,self,arguments)->{
+					Object value=left.evaluate(interpreter,self,arguments);
+					if(Interpreter.isTruthy(value)) return value;
+					return right.evaluate(interpreter,self,arguments);
+				};
+			}
+			return (interpreter,self,arguments)->{
+				Object value=left.evaluate(interpreter,self,arguments);
+				if(!Interpreter.isTruthy(value)) return value;
+				return right.evaluate(interpreter,self,arguments);
+			};
+		}
+		@Override
+		public Expression visitSetExpr(Expr.Set expr) {
+			throw Declined.INSTANCE;
+		}
+		@Override
+		public Expression visitSuperExpr(Expr.Super expr) {
+			throw Declined.INSTANCE;
+		}
+		@Override
+		public Expression visitThisExpr(Expr.This expr) {
+			//The body's frame sits right on top of the scope holding 'this'.
+			Integer distance=locals.get(expr);
+			if(!function.method || distance==null || distance!=1) throw Declined.INSTANCE;
+			return (interpreter,self,arguments)->self;
+		}
+		@Override
+		public Expression visitUnaryExpr(Expr.Unary expr) {
+			Expression right=compile(expr.right);
+			Token operator=expr.operator;
+			if(operator.type==TokenType.BANG) {
+				return (interpreter,self,arguments)->!Interpreter.isTruthy(right.evaluate(interpreter,self,arguments));
+			}
+			return (interpreter,self,arguments)->{
+				Object value=right.evaluate(interpreter,self,arguments);
+				Interpreter.checkNumberOperand(operator,value);
+				return -(double)value;
+			};
+		}
+		@Override
+		public Expression visitVariableExpr(Expr.Variable expr) {
+			Integer distance=locals.get(expr);
+			Token name=expr.name;
+			if(distance==null || distance>0) throw Declined.INSTANCE;
+			if(distance<0) {
+				int slot=-1-distance;
+				return (interpreter,self,arguments)->interpreter.readGlobal(slot,name);
+			}
+			int index=parameter(name);
+			return (interpreter,self,arguments)->arguments[index];
+		}
+	}
+}
@@ -14,7 +14,7 @@ import com.craftinginterpreters.jlox.Stmt.Print;
 import com.craftinginterpreters.jlox.Stmt.Return;
 import com.craftinginterpreters.jlox.Stmt.Var;
 import com.craftinginterpreters.jlox.Stmt.While;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
@@ -29,42 +29,233 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 
 	//private Environment environment = new Environment();
 	//Running environment as a field directly so variables stay in memory as long as the interpreter is running.
-	//Implementing the clock() native function by implementing it in global environment 
-	final Environment globals = new Environment();
-	private final Map<Expr, Integer> locals=new HashMap<>();
-	private Environment environment=globals;
-	//Implementing clock() fn in global environment
-	Interpreter(){
-		globals.define("clock", new LoxCallable() {
-			@Override 
-			public int arity() {return 0;}
-			
-			@Override 
-			public Object call(Interpreter interpreter,List<Object> arguments) {
-				return (double)System.currentTimeMillis()/1000.0;
+	//An Interpreter is one execution context: globals, the current environment and the call stack.
+	//It is confined to the thread running it, the Program it executes is shared and read only.
+	final Environment globals;
+	private final ErrorReporter reporter;
+	//Where print goes, flushed when interpret or run returns.
+	final OutputSink out;
+	private Map<Expr, Integer> locals=Map.of();
+	private Map<Stmt.Function, Captures> captures=Map.of();
+	//Cells of the globals looked up so far, by the slot the Resolver gave their name.
+	private Environment.Cell[] globalCells=new Environment.Cell[0];
+	//Shared with the other engines, which run on this execution context too.
+	Environment environment;
+	//How top-level code runs, function bodies always run the way the engine that declared them was.
+	Engine engine=Engine.TREE;
+	private final FlatInterpreter flat=new FlatInterpreter(this);
+	//Set by debug(), null when nobody is debugging this execution. Debugger.detach clears it from another thread.
+	volatile Debugger debugger;
+	//Set by cover(), null when this execution isn't collecting coverage.
+	private Coverage coverage;
+	//Lox functions currently on the stack, for runtime error traces and the profiler.
+	final CallStack callStack;
+	//What this execution may still use before it has to draw more from the budget, see Budget.
+	//Statements, environments and instances only count down, the counters are checked at loop iterations,
+	//calls and string allocations, which bounds the overshoot by the size of the program.
+	private final Budget budget;
+	long fuel;
+	long memory;
+	//Counted here and added to InterpreterMetrics at every refill and when a run ends, a LongAdder increment
+	//per statement would cost about as much as the statement.
+	long statementsExecuted;
+	long callsMade;
+	//The call frames and block scopes allocated, counted where the budget charges for them, and the instances.
+	long environmentsAllocated;
+	long instancesCreated;
+	//Budget.depth, checked by every call against the call stack.
+	final int maxDepth;
+	//The host's handle to stop this execution, polled wherever the budget is checked.
+	final Cancellation cancellation;
+	//Natives like clock() live in the global environment, see Natives.
+	Interpreter(ErrorReporter reporter){
+		this(reporter,OutputSink.stdout());
+	}
+	Interpreter(ErrorReporter reporter,OutputSink out){
+		this(reporter,out,Budget.unlimited());
+	}
+	Interpreter(ErrorReporter reporter,OutputSink out,Budget budget){
+		this.reporter=reporter;
+		this.out=out;
+		this.budget=budget;
+		this.maxDepth=budget.depth;
+		this.cancellation=new Cancellation();
+		this.globals=new Environment();
+		this.environment=globals;
+		this.callStack=new CallStack();
+		Natives.define(globals);
+		InterpreterMetrics.register();
+	}
+	//Execution context for a task spawned from parent, it shares the parent's globals, resolution and budget
+	//but has its own environment and call stack.
+	Interpreter(Interpreter parent){
+		this.reporter=parent.reporter;
+		this.out=parent.out;
+		this.budget=parent.budget;
+		this.maxDepth=parent.maxDepth;
+		this.cancellation=parent.cancellation;
+		this.globals=parent.globals;
+		this.locals=parent.locals;
+		this.captures=parent.captures;
+		this.globalCells=new Environment.Cell[parent.globalCells.length];
+		this.environment=globals;
+		this.engine=parent.engine;
+		this.callStack=new CallStack("task");
+	}
+	void interpret(Program program) {
+		load(program);
+		LoxEvents.Phase phase=LoxEvents.Phase.start("execute");
+		try {
+			switch(engine(program)) {
+			case FLAT:
+				flat.execute(program.flat());
+				break;
+			case CLOSURE:
+				closures(program).execute(this);
+				break;
+			default:
+				for(Stmt statement: program.statements) {
+					execute(statement);
+				}
 			}
-			@Override
-			public String toString() {return "<native fn>";}
-		});
+		}catch(RuntimeError error) {
+			recordError(error);
+			out.flush();
+			reporter.runtimeError(error);
+		}finally {
+			out.flush();
+			publishMetrics();
+			phase.finish();
+		}
 	}
-	void interpret(List<Stmt> statements) {
+	//Entry point for embedders: runs the program and hands back the value of its last statement if that
+	//is an expression statement, instead of printing anything. Runtime errors propagate to the caller.
+	Object run(Program program) {
+		load(program);
+		LoxEvents.Phase phase=LoxEvents.Phase.start("execute");
 		try {
-			for(Stmt statement: statements) {
-				execute(statement);
+			Engine engine=engine(program);
+			if(engine==Engine.FLAT) return flat.run(program.flat());
+			if(engine==Engine.CLOSURE) return closures(program).run(this);
+			List<Stmt> statements=program.statements;
+			int last=statements.size()-1;
+			for(int i=0;i<last;i++) {
+				execute(statements.get(i));
 			}
+			if(last<0) return null;
+			Stmt tail=statements.get(last);
+			if(tail instanceof Stmt.Expression) {
+				statementsExecuted++;
+				return evaluate(((Stmt.Expression)tail).expression);
+			}
+			execute(tail);
+			return null;
 		}catch(RuntimeError error) {
-			Lox.runtimeError(error);
+			recordError(error);
+			throw error;
+		}finally {
+			out.flush();
+			publishMetrics();
+			phase.finish();
+		}
+	}
+	//Breakpoints are swapped into the closure engine's code, so a debugged execution runs on that engine.
+	void debug(Debugger debugger) {
+		this.debugger=debugger;
+		this.engine=Engine.CLOSURE;
+		debugger.debugging(this);
+	}
+	//Coverage counters are converted into the closure engine's code as well.
+	void cover(Coverage coverage) {
+		this.coverage=coverage;
+		this.engine=Engine.CLOSURE;
+	}
+	//A flat only program has no statements for the other engines.
+	private Engine engine(Program program) {
+		if(!program.flatOnly) return engine;
+		if(debugger!=null || coverage!=null) throw new IllegalStateException("A flat only program can't be debugged or covered.");
+		return Engine.FLAT;
+	}
+	//Coverage and the debugger change the converted code, so they run on conversions of their own.
+	private ClosureProgram closures(Program program) {
+		Debugger debugger=this.debugger;
+		ClosureProgram closures;
+		if(coverage!=null) {
+			closures=coverage.convert(program);
+		}else if(debugger!=null) {
+			closures=debugger.convert(program);
+		}else {
+			closures=program.closures();
+		}
+		if(debugger!=null) debugger.attach(closures);
+		return closures;
+	}
+	FlatInterpreter flat() {
+		return flat;
+	}
+	private void load(Program program) {
+		locals=program.locals;
+		captures=program.captures;
+		if(globalCells.length<program.globals.size()) {
+			globalCells=Arrays.copyOf(globalCells,program.globals.size());
+		}
+	}
+	private void recordError(RuntimeError error) {
+		error.fillLoxTrace(callStack);
+		LoxEvents.Error event=new LoxEvents.Error();
+		if(event.isEnabled()) {
+			event.message=error.getMessage();
+			event.line=error.token.line;
+			event.loxTrace=error.loxTrace;
+			event.commit();
 		}
 	}
 	private Void execute(Stmt stmt) {
+		statementsExecuted++;
+		fuel--;
 		return stmt.accept(this);
 	}
-	void resolve(Expr expr,int depth) {
-		locals.put(expr,depth);
+	//Charges a loop iteration or a call and checks the budget and for cancellation.
+	void tick(Token at) {
+		if(--fuel<0 || memory<0) refill(at);
+		if(cancellation.requested()) cancellation.check(at);
+	}
+	void allocate(Token at,String string) {
+		allocate(at,Budget.STRING_BYTES+2L*string.length());
+	}
+	//Charged before the memory is taken, so a runaway list fails the budget instead of the JVM.
+	void allocate(Token at,long bytes) {
+		memory-=bytes;
+		if(memory<0) refill(at);
+	}
+	private void refill(Token at) {
+		publishMetrics();
+		if(fuel<0) {
+			long more=budget.refuel(-fuel);
+			if(more<0) throw new RuntimeError(at,"Execution budget exceeded.");
+			fuel=more;
+		}
+		if(memory<0) {
+			long more=budget.reserve(-memory);
+			if(more<0) throw new RuntimeError(at,"Memory budget exceeded.");
+			memory=more;
+		}
 	}
-	private String stringify(Object object) {
+	void publishMetrics() {
+		InterpreterMetrics.statements.add(statementsExecuted);
+		InterpreterMetrics.calls.add(callsMade);
+		InterpreterMetrics.environments.add(environmentsAllocated);
+		InterpreterMetrics.instances.add(instancesCreated);
+		statementsExecuted=0;
+		callsMade=0;
+		environmentsAllocated=0;
+		instancesCreated=0;
+	}
+	static String stringify(Object object) {
 		if(object==null) return "nil";
 		if(object instanceof Double) {
+			double number=(double)object;
+			if(isSmallInteger(number)) return Integer.toString((int)number);
 			String text=object.toString();
 			if(text.endsWith(".0")) {
 				text=text.substring(0,text.length()-2);
@@ -73,6 +264,10 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 		}
 		return object.toString();
 	}
+	//Integral, not -0 and small enough that Double.toString would have written it as digits followed by ".0".
+	static boolean isSmallInteger(double number) {
+		return number>-1e7 && number<1e7 && number==(int)number && (number!=0 || 1/number>0);
+	}
 	@Override
 	//unlike expressions statement doesn't produce any value.
 	//So we are going to visit both the type of statements and their return type will be 'Void'
@@ -85,7 +280,7 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 	//Before discarding the value in print statement we Stringify it and then print it in console.
 	public Void visitPrintStmt(Stmt.Print stmt) {
 		Object value=evaluate(stmt.expression);
-		System.out.println(stringify(value));
+		out.println(value);
 		return null;
 	}
 	@Override
@@ -134,7 +329,9 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 				return (double)left +(double)right;
 			}
 			if(left instanceof String && right instanceof String) {
-				return (String)left+ (String)right;
+				String result=(String)left+ (String)right;
+				allocate(expr.operator,result);
+				return result;
 			}
 			throw new RuntimeError(expr.operator,"Operands must be two numbers or two strings");
 		case SLASH:
@@ -154,7 +351,7 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 	}
 	//We have to deal nil/null specially so that we don't throw a NullPointerException if we try to call equals() on null.
 	//otherwise the Java's equals() method on Boolean,Double and String have the behavior we want from lox.
-	private boolean isEqual(Object a,Object b) {
+	static boolean isEqual(Object a,Object b) {
 		if(a==null&&b==null) return true;
 		if(a==null) return false;
 		return a.equals(b);
@@ -188,18 +385,18 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 		
 		return null;
 	}
-	private void checkNumberOperand(Token operator,Object operand) {
+	static void checkNumberOperand(Token operator,Object operand) {
 		if(operand instanceof Double) return;
 		throw new RuntimeError(operator,"Operand must be a number");
 	}
-	private void checkNumberOperands(Token operator,Object left,Object right) {
+	static void checkNumberOperands(Token operator,Object left,Object right) {
 		if(left instanceof Double && right instanceof Double) return;
 		
 		throw new RuntimeError(operator,"Operands must be numbers.");
 	}
 	//Most dynamically typed language takes the universe of value and partition them into two sets
 	//one of which is truthy and other is falsy.
-	private boolean isTruthy(Object object) {
+	static boolean isTruthy(Object object) {
 		if(object==null) return false;
 		if(object instanceof Boolean) return (boolean)object;
 		return true;
@@ -222,11 +419,39 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 	}
 	private Object lookUpVariable(Token name, Expr expr) {
 		Integer distance=locals.get(expr);
-		if(distance!=null) {
-			return environment.getAt(distance,name.lexeme);
-		}else {
-			return globals.get(name);
+		if(distance==null) return globals.get(name);
+		if(distance<0) return readGlobal(-1-distance,name);
+		return environment.getAt(distance,name.lexeme);
+	}
+	Object readGlobal(int slot,Token name) {
+		Object value=global(slot,name).value;
+		if(value==Environment.UNDEFINED) throw Environment.undefined(name);
+		return value;
+	}
+	void writeGlobal(int slot,Token name,Object value) {
+		Environment.Cell cell=global(slot,name);
+		if(cell.value==Environment.UNDEFINED) throw Environment.undefined(name);
+		cell.value=value;
+	}
+	//Globals are late bound, the cell is looked up by name the first time and exists from then on,
+	//holding UNDEFINED until the global is defined.
+	private Environment.Cell global(int slot,Token name) {
+		Environment.Cell[] cells=globalCells;
+		if(slot<cells.length) {
+			Environment.Cell cell=cells[slot];
+			if(cell!=null) return cell;
 		}
+		return bindGlobal(slot,name);
+	}
+	//A task spawned before the slot was handed out, by a later line at the prompt or a later statement of a
+	//stream, has no room for it yet.
+	private Environment.Cell bindGlobal(int slot,Token name) {
+		if(slot>=globalCells.length) {
+			globalCells=Arrays.copyOf(globalCells,Math.max(slot+1,2*globalCells.length));
+		}
+		Environment.Cell cell=globals.global(name.lexeme);
+		globalCells[slot]=cell;
+		return cell;
 	}
 	//Implementation of assignment is very similar to that of variable declarations, instead of creating a key value pair we just
 	//have to change the value of already existing key.
@@ -234,15 +459,19 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 	public Object visitAssignExpr(Assign expr) {
 		Object value=evaluate(expr.value);
 		Integer distance=locals.get(expr);
-		if(distance!=null) {
-			environment.assignAt(distance,expr.name,value);
-		}else {
+		if(distance==null) {
 			globals.assign(expr.name,value);
+		}else if(distance<0) {
+			writeGlobal(-1-distance,expr.name,value);
+		}else {
+			environment.assignAt(distance,expr.name,value);
 		}
 		return value;
 	}
 	@Override
 	public Void visitBlockStmt(Block stmt) {
+		memory-=Budget.ENVIRONMENT_BYTES;
+		environmentsAllocated++;
 		executeBlock(stmt.statments,new Environment(environment));
 		return null;
 	}
@@ -274,7 +503,7 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 		}
 		Map<String, LoxFunction> methods=new HashMap<>();
 		for(Stmt.Function method: stmt.methods) {
-			LoxFunction function=new LoxFunction(method,method.name.lexeme.equals("init"),environment);
+			LoxFunction function=new LoxFunction(method,method.name.lexeme.equals("init"),closure(method));
 			methods.put(method.name.lexeme, function);
 		}
 		LoxClass klass= new LoxClass(stmt.name.lexeme,(LoxClass)superclass,methods);
@@ -288,13 +517,21 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 	@Override
 	public Object visitSuperExpr(Expr.Super expr) {
 		int distance=locals.get(expr);
-		LoxClass superclass=(LoxClass)environment.getAt(distance,"super");
+		LoxFunction method=superMethod(expr.method,distance);
 		LoxInstance object=(LoxInstance)environment.getAt(distance-1, "this");
-		LoxFunction method=superclass.findMethod(expr.method.lexeme);
+		return method.bind(object);
+	}
+	//The method super.name refers to, looked up in the superclass every time here, the closure engine caches it per
+	//site. What super calls save on every engine is the bound LoxFunction, see visitCallExpr.
+	LoxFunction superMethod(Token name,int distance) {
+		return superMethod((LoxClass)environment.getAt(distance,"super"),name);
+	}
+	static LoxFunction superMethod(LoxClass superclass,Token name) {
+		LoxFunction method=superclass.findMethod(name.lexeme);
 		if(method==null) {
-			throw new RuntimeError(expr.method,"Undefined property '"+expr.method.lexeme+"'.");
+			throw new RuntimeError(name,"Undefined property '"+name.lexeme+"'.");
 		}
-		return method.bind(object);
+		return method;
 	}
 	@Override
 	public Void visitIfStmt(If stmt) {
@@ -321,26 +558,78 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 	public Void visitWhileStmt(While stmt) {
 		while(isTruthy(evaluate(stmt.condition))) {
 			execute(stmt.body);
+			tick(stmt.keyword);
 		}
 		return null;
 	}
+	//The arguments of a call that is going to fail, for their side effects.
+	private void evaluateAll(List<Expr> arguments) {
+		for(Expr argument:arguments) {
+			evaluate(argument);
+		}
+	}
 	@Override
+	//No argument list is built: Lox functions get their arguments evaluated straight into the callee's frame,
+	//other callables through the entry point for their arity. The callee and its arity are checked first, a bad
+	//call still evaluates its arguments before it fails so their side effects happen as they always have.
 	public Object visitCallExpr(Call expr) {
-		Object callee=evaluate(expr.calle);
-		
-		List<Object> arguments=new ArrayList<>();
-		for(Expr argument:expr.arguments) {
-			arguments.add(evaluate(argument));
+		Object callee;
+		//super.method(...) calls the method straight on 'this' instead of binding it first.
+		LoxInstance receiver=null;
+		if(expr.calle instanceof Expr.Super) {
+			Expr.Super target=(Expr.Super)expr.calle;
+			int distance=locals.get(target);
+			callee=superMethod(target.method,distance);
+			receiver=(LoxInstance)environment.getAt(distance-1, "this");
+		}else {
+			callee=evaluate(expr.calle);
 		}
+		List<Expr> arguments=expr.arguments;
+		int count=arguments.size();
+		
 		if(!(callee instanceof LoxCallable)) {
+			evaluateAll(arguments);
 			throw new RuntimeError(expr.paren,"Can only call functions and classes.");
 		}
 		
 		LoxCallable function=(LoxCallable)callee;
-		if(arguments.size()!=function.arity()) {
-			throw new RuntimeError(expr.paren, "Expected "+ function.arity()+" arguements but go " + arguments.size() + ".");
+		if(count!=function.arity()) {
+			evaluateAll(arguments);
+			throw new RuntimeError(expr.paren, "Expected "+ function.arity()+" arguements but go " + count + ".");
+		}
+		callStack.line(expr.paren.line);
+		callsMade++;
+		tick(expr.paren);
+		try {
+			if(function instanceof LoxFunction) {
+				LoxFunction loxFunction=(LoxFunction)function;
+				Environment frame=receiver==null?loxFunction.frame():loxFunction.frame(receiver);
+				for(int i=0;i<count;i++) {
+					frame.define(loxFunction.parameter(i), evaluate(arguments.get(i)));
+				}
+				return loxFunction.invoke(this,frame);
+			}
+			Object result;
+			switch(count) {
+			case 0: result=function.call0(this); break;
+			case 1: result=function.call1(this,evaluate(arguments.get(0))); break;
+			case 2: result=function.call2(this,evaluate(arguments.get(0)),evaluate(arguments.get(1))); break;
+			case 3: result=function.call3(this,evaluate(arguments.get(0)),evaluate(arguments.get(1)),evaluate(arguments.get(2))); break;
+			case 4: result=function.call4(this,evaluate(arguments.get(0)),evaluate(arguments.get(1)),evaluate(arguments.get(2)),evaluate(arguments.get(3))); break;
+			default:
+				Object[] values=new Object[count];
+				for(int i=0;i<count;i++) {
+					values[i]=evaluate(arguments.get(i));
+				}
+				result=function.call(this,values);
+			}
+			//Strings built by natives count against the memory budget like concatenation does.
+			if(result instanceof String) allocate(expr.paren,(String)result);
+			return result;
+		}catch(RuntimeError error) {
+			if(error.token==null) throw new RuntimeError(expr.paren,error.getMessage());
+			throw error;
 		}
-		return function.call(this,arguments);
 	}
 	@Override
 	public Object visitGetExpr(Expr.Get expr) {
@@ -348,6 +637,9 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 		if(object instanceof LoxInstance) {
 			return ((LoxInstance) object).get(expr.name);
 		}
+		if(object instanceof NativeModule) {
+			return ((NativeModule) object).get(expr.name);
+		}
 		
 		throw new RuntimeError(expr.name,"Only instances have properties.");
 	}
@@ -369,10 +661,16 @@ class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void>{
 	}
 	@Override
 	public Void visitFunctionStmt(Function stmt) {
-		LoxFunction function = new LoxFunction(stmt,false,environment);
-		environment.define(stmt.name.lexeme, function);
+		//Declared first so a recursive function captures its own name.
+		environment.define(stmt.name.lexeme, null);
+		LoxFunction function = new LoxFunction(stmt,false,closure(stmt));
+		environment.assignAt(0,stmt.name,function);
 		return null;
 	}
+	//Functions only hold on to the variables they use, not to the whole environment they are declared in.
+	private Environment closure(Function declaration) {
+		return captures.getOrDefault(declaration,Captures.NONE).close(environment,globals);
+	}
 	@Override
 	public Void visitReturnStmt(Return stmt) {
 		Object value=null;
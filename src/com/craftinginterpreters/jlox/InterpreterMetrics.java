@@ -0,0 +1,102 @@
+package com.craftinginterpreters.jlox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//Live counters of interpreter internals, exposed over JMX.
+//The counters are LongAdders so concurrent interpreters don't fight over a single cache line,
+//and reading them is left to the (rare) JMX poll.
+final class InterpreterMetrics implements InterpreterMetricsMXBean {
+	static final String OBJECT_NAME="com.craftinginterpreters.jlox:type=Interpreter";
+	static final int LOOKUP_DEPTH_BUCKETS=8;
+
+	static final LongAdder statements=new LongAdder();
+	static final LongAdder calls=new LongAdder();
+	static final LongAdder environments=new LongAdder();
+	static final LongAdder instances=new LongAdder();
+	private static final LongAdder[] lookupDepths=new LongAdder[LOOKUP_DEPTH_BUCKETS];
+	private static final LongAdder scanNanos=new LongAdder();
+	private static final LongAdder parseNanos=new LongAdder();
+	private static final LongAdder resolveNanos=new LongAdder();
+	private static final LongAdder executeNanos=new LongAdder();
+	static {
+		for(int i=0;i<LOOKUP_DEPTH_BUCKETS;i++) {
+			lookupDepths[i]=new LongAdder();
+		}
+	}
+	//Registered by the first Interpreter, so embedders get the MBean as well as the command line.
+	private static volatile boolean registered=false;
+
+	private InterpreterMetrics() {}
+
+	static void register() {
+		if(!registered) registerOnce();
+	}
+	private static synchronized void registerOnce() {
+		if(registered) return;
+		try {
+			MBeanServer server=ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(new InterpreterMetrics(), new ObjectName(OBJECT_NAME));
+			registered=true;
+		}catch(InstanceAlreadyExistsException e) {
+			//Another copy of the interpreter, loaded by a different class loader, got there first.
+			registered=true;
+		}catch(JMException e) {
+			throw new IllegalStateException("Could not register interpreter metrics.", e);
+		}
+	}
+	static void methodLookup(int depth) {
+		lookupDepths[Math.min(depth, LOOKUP_DEPTH_BUCKETS-1)].increment();
+	}
+	static void phase(String phase,long nanos) {
+		switch(phase) {
+		case "scan": scanNanos.add(nanos); break;
+		case "parse": parseNanos.add(nanos); break;
+		case "resolve": resolveNanos.add(nanos); break;
+		case "execute": executeNanos.add(nanos); break;
+		}
+	}
+	@Override
+	public long getStatementsExecuted() {return statements.sum();}
+	@Override
+	public long getCallsMade() {return calls.sum();}
+	@Override
+	public long getEnvironmentsAllocated() {return environments.sum();}
+	@Override
+	public long getInstancesCreated() {return instances.sum();}
+	@Override
+	public long[] getMethodLookupDepthHistogram() {
+		long[] histogram=new long[LOOKUP_DEPTH_BUCKETS];
+		for(int i=0;i<LOOKUP_DEPTH_BUCKETS;i++) {
+			histogram[i]=lookupDepths[i].sum();
+		}
+		return histogram;
+	}
+	@Override
+	public long getScanNanos() {return scanNanos.sum();}
+	@Override
+	public long getParseNanos() {return parseNanos.sum();}
+	@Override
+	public long getResolveNanos() {return resolveNanos.sum();}
+	@Override
+	public long getExecuteNanos() {return executeNanos.sum();}
+	@Override
+	public void reset() {
+		statements.reset();
+		calls.reset();
+		environments.reset();
+		instances.reset();
+		for(LongAdder bucket:lookupDepths) {
+			bucket.reset();
+		}
+		scanNanos.reset();
+		parseNanos.reset();
+		resolveNanos.reset();
+		executeNanos.reset();
+	}
+}
@@ -0,0 +1,18 @@
+package com.craftinginterpreters.jlox;
+
+//Management interface of InterpreterMetrics, registered as com.craftinginterpreters.jlox:type=Interpreter.
+//All counters are totals over every interpreter in the JVM since start up or the last reset.
+public interface InterpreterMetricsMXBean {
+	long getStatementsExecuted();
+	long getCallsMade();
+	//Call frames and block scopes. The few scopes made per class, closure or bound method aren't counted.
+	long getEnvironmentsAllocated();
+	long getInstancesCreated();
+	//Index i counts method lookups that walked up i superclasses, the last bucket collects everything deeper.
+	long[] getMethodLookupDepthHistogram();
+	long getScanNanos();
+	long getParseNanos();
+	long getResolveNanos();
+	long getExecuteNanos();
+	void reset();
+}
@@ -0,0 +1,104 @@
+package com.craftinginterpreters.jlox;
+
+//The line a statement or expression starts on, from the first token it kept. 0 when it kept none,
+//which only happens for literals and an empty block.
+final class Lines implements Expr.Visitor<Integer>,Stmt.Visitor<Integer> {
+	private static final Lines LINES=new Lines();
+
+	private Lines() {
+	}
+	static int of(Stmt stmt) {
+		return stmt.accept(LINES);
+	}
+	static int of(Expr expr) {
+		return expr.accept(LINES);
+	}
+	private static int first(Expr expr,Token otherwise) {
+		int line=of(expr);
+		return line>0?line:otherwise.line;
+	}
+	@Override
+	public Integer visitAssignExpr(Expr.Assign expr) {
+		return expr.name.line;
+	}
+	@Override
+	public Integer visitBinaryExpr(Expr.Binary expr) {
+		return first(expr.left,expr.operator);
+	}
+	@Override
+	public Integer visitCallExpr(Expr.Call expr) {
+		return first(expr.calle,expr.paren);
+	}
+	@Override
+	public Integer visitGetExpr(Expr.Get expr) {
+		return first(expr.object,expr.name);
+	}
+	@Override
+	public Integer visitGroupingExpr(Expr.Grouping expr) {
+		return of(expr.expression);
+	}
+	@Override
+	public Integer visitLiteralExpr(Expr.Literal expr) {
+		return 0;
+	}
+	@Override
+	public Integer visitLogicalExpr(Expr.Logical expr) {
+		return first(expr.left,expr.operator);
+	}
+	@Override
+	public Integer visitSetExpr(Expr.Set expr) {
+		return first(expr.object,expr.name);
+	}
+	@Override
+	public Integer visitSuperExpr(Expr.Super expr) {
+		return expr.keyword.line;
+	}
+	@Override
+	public Integer visitThisExpr(Expr.This expr) {
+		return expr.keyword.line;
+	}
+	@Override
+	public Integer visitUnaryExpr(Expr.Unary expr) {
+		return expr.operator.line;
+	}
+	@Override
+	public Integer visitVariableExpr(Expr.Variable expr) {
+		return expr.name.line;
+	}
+	@Override
+	public Integer visitBlockStmt(Stmt.Block stmt) {
+		return stmt.statments.isEmpty()?0:of(stmt.statments.get(0));
+	}
+	@Override
+	public Integer visitClassStmt(Stmt.Class stmt) {
+		return stmt.name.line;
+	}
+	@Override
+	public Integer visitExpressionStmt(Stmt.Expression stmt) {
+		return of(stmt.expression);
+	}
+	@Override
+	public Integer visitFunctionStmt(Stmt.Function stmt) {
+		return stmt.name.line;
+	}
+	@Override
+	public Integer visitIfStmt(Stmt.If stmt) {
+		return stmt.keyword.line;
+	}
+	@Override
+	public Integer visitPrintStmt(Stmt.Print stmt) {
+		return stmt.keyword.line;
+	}
+	@Override
+	public Integer visitReturnStmt(Stmt.Return stmt) {
+		return stmt.keyword.line;
+	}
+	@Override
+	public Integer visitVarStmt(Stmt.Var stmt) {
+		return stmt.name.line;
+	}
+	@Override
+	public Integer visitWhileStmt(Stmt.While stmt) {
+		return stmt.keyword.line;
+	}
+}
@@ -6,77 +6,133 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.Arrays;
 
+//Command line front end. There's no static interpreter or error state here anymore, each run gets its own
+//ErrorReporter and Interpreter so scripts can be compiled and executed concurrently in one JVM.
 public class Lox {
-	private  static final Interpreter interpreter=new Interpreter();
-	static boolean hadError=false;
-	static boolean hadRuntimeError=false;
+	//Sampling interval of --profile.
+	private static final long PROFILE_INTERVAL_MICROS=1000;
+	private static final String USAGE="Usage:jlox [--profile] [--coverage] [--stream] [--engine=tree|flat|closure] [script]";
 	public static void main(String[] args) throws IOException{
-		if(args.length>1) {
-			System.out.println("Usage:jlox [script]");
-			System.exit(64);
+		boolean profile=false;
+		boolean coverage=false;
+		boolean stream=false;
+		Engine engine=Engine.TREE;
+		int options=0;
+		for(;options<args.length && args[options].startsWith("--");options++) {
+			String option=args[options];
+			if(option.equals("--profile")) {
+				profile=true;
+			}else if(option.equals("--coverage")) {
+				coverage=true;
+			}else if(option.equals("--stream")) {
+				stream=true;
+			}else if(option.startsWith("--engine=")) {
+				engine=engine(option.substring("--engine=".length()));
+			}else {
+				usage();
+			}
+		}
+		args=Arrays.copyOfRange(args, options, args.length);
+		if(args.length>1 || ((profile || coverage || stream) && args.length==0)) {
+			usage();
 		}
 		else if(args.length==1) {
-			runFile(args[0]);
+			runFile(args[0],profile,coverage,stream,engine);
 		}
 		else {
-			runPrompt();
+			runPrompt(engine);
+		}
+	}
+	private static Engine engine(String name) {
+		for(Engine engine:Engine.values()) {
+			if(engine.name().equalsIgnoreCase(name)) return engine;
 		}
+		usage();
+		return null;
 	}
-	private static void runFile(String path) throws IOException{
-		byte[] bytes=Files.readAllBytes(Paths.get(path));
-		run(new String(bytes,Charset.defaultCharset()));
-		if(hadError) System.exit(65);
-		if(hadRuntimeError) System.exit(70);
+	private static void usage() {
+		System.out.println(USAGE);
+		System.exit(64);
 	}
-	private static void runPrompt() throws IOException{
+	//With --profile the script runs under the sampling profiler, the collapsed stacks go to <script>.folded
+	//for flame graph tools and the per function table to stderr.
+	//With --coverage it runs on the closure engine counting statements and branches, the LCOV tracefile goes to
+	//<script>.lcov and a summary to stderr.
+	//With --stream each top-level declaration runs as soon as it is parsed and is dropped once it ran, see
+	//ProgramStream. Output starts right away, but a syntax error further down only stops the script when it's reached.
+	private static void runFile(String path,boolean profile,boolean coverage,boolean stream,Engine engine) throws IOException{
+		String source=new String(Files.readAllBytes(Paths.get(path)),Charset.defaultCharset());
+		ErrorReporter reporter=new ErrorReporter(System.err);
+		Interpreter interpreter=new Interpreter(reporter);
+		interpreter.engine=engine;
+		Coverage counters=null;
+		if(coverage) {
+			counters=new Coverage();
+			interpreter.cover(counters);
+		}
+		Profiler profiler=null;
+		if(profile) {
+			profiler=new Profiler(interpreter.callStack,PROFILE_INTERVAL_MICROS);
+			profiler.start();
+		}
+		if(stream) {
+			stream(source,interpreter,reporter);
+		}else if(interpreter.engine==Engine.FLAT) {
+			Program program=flatOnly(source,reporter);
+			if(program!=null) interpreter.interpret(program);
+		}else {
+			run(source,interpreter,reporter,null);
+		}
+		if(profiler!=null) {
+			profiler.stop();
+			profiler.writeCollapsed(Paths.get(path+".folded"));
+			profiler.printTable(System.err);
+		}
+		if(counters!=null) {
+			counters.writeLcov(Paths.get(path+".lcov"),path);
+			counters.printSummary(System.err);
+		}
+		if(reporter.hadError) System.exit(65);
+		if(reporter.hadRuntimeError) System.exit(70);
+	}
+	//The prompt keeps one interpreter for the whole session, and the previous line's Program so
+	//functions declared earlier keep their resolution.
+	private static void runPrompt(Engine engine) throws IOException{
 		InputStreamReader input= new InputStreamReader(System.in);
 		BufferedReader reader=new BufferedReader(input);
+		ErrorReporter reporter=new ErrorReporter(System.err);
+		Interpreter interpreter=new Interpreter(reporter);
+		interpreter.engine=engine;
+		Program session=null;
 		
 		for(;;) {
 			System.out.print("> ");
 			String line=reader.readLine();
 			if(line==null) break;
-			run(line);
-			hadError=false;
+			Program program=run(line,interpreter,reporter,session);
+			if(program!=null) session=program;
+			reporter.hadError=false;
 			}
 	}
-	private static void run(String source) {
-		Scanner scanner=new Scanner(source);  
-		List<Token> tokens= scanner.scanTokens();
-		Parser parser=new Parser(tokens);
-		List<Stmt> statements=parser.parse();
-		if(hadError) return;
-		Resolver resolver=new Resolver(interpreter);
-		resolver.resolve(statements);
-		if(hadError) return;
-		interpreter.interpret(statements);
-//		for(Token token : tokens) {
-//			System.out.println(token);
-//		}
-	}
-	static void error(int current,int line, String message) {
-		report(current%line,line, "",message);
-	}
-	static void runtimeError(RuntimeError error) {
-		System.err.println(error.getMessage()+"\n[line"+error.token.line+"]");
-	}
-	static void error(Token token,String message) {
-		if(token.type==TokenType.EOF) {
-			report(token.line," at end",message);
-		}else {
-			report(token.line, " at '"+token.lexeme+"'",message);
+	private static void stream(String source,Interpreter interpreter,ErrorReporter reporter) {
+		ProgramStream statements=new ProgramStream(source,reporter);
+		for(Program statement=statements.next();statement!=null;statement=statements.next()) {
+			interpreter.interpret(statement);
+			if(reporter.hadRuntimeError) return;
+			statements.release();
 		}
 	}
-	private static void report(int pos,int line,String where,String message) {
-		System.err.println(
-				"[line"+line+"][At Position "+pos+"] Error"+where+": "+ message);
-		hadError=true;
+	//The flat engine needs nothing but the lowered code, the tree can go before the script starts.
+	private static Program flatOnly(String source,ErrorReporter reporter) {
+		Program program=Program.compile(source,reporter);
+		return program==null?null:program.flatOnly();
 	}
-	private static void report(int line,String where,String message) {
-		System.err.println(
-				"[line"+line+"] Error"+where+": "+ message);
-		hadError=true;
+	private static Program run(String source,Interpreter interpreter,ErrorReporter reporter,Program previous) {
+		Program program=Program.compile(source,reporter,previous);
+		if(program==null) return null;
+		interpreter.interpret(program);
+		return program;
 	}
 }
@@ -1,8 +1,26 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.List;
-
+//Calls come in through the entry point matching their argument count so small calls don't need an array,
+//call() with an array is the fallback for five or more. Implementations only have to provide call(),
+//the fixed arity entry points default to it and are overridden where that saves the allocation.
 interface LoxCallable {
+	Object[] NO_ARGUMENTS=new Object[0];
+
 	int arity();
-	Object call(Interpreter interpreter, List<Object> arguments);
-}
\ No newline at end of file
+	Object call(Interpreter interpreter, Object[] arguments);
+	default Object call0(Interpreter interpreter) {
+		return call(interpreter, NO_ARGUMENTS);
+	}
+	default Object call1(Interpreter interpreter, Object a) {
+		return call(interpreter, new Object[] {a});
+	}
+	default Object call2(Interpreter interpreter, Object a, Object b) {
+		return call(interpreter, new Object[] {a, b});
+	}
+	default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return call(interpreter, new Object[] {a, b, c});
+	}
+	default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		return call(interpreter, new Object[] {a, b, c, d});
+	}
+}
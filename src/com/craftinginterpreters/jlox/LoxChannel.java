@@ -0,0 +1,46 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+//Bounded channel between tasks. send() blocks while it is full and receive() while it is empty.
+//Like any BlockingQueue, everything a task did before send() is visible to the task that receives the value.
+//Both wait in slices so a cancelled execution doesn't stay blocked.
+class LoxChannel {
+	//The queue can't hold null, nil travels as this marker.
+	private static final Object NIL=new Object();
+	private final BlockingQueue<Object> queue;
+	private final int capacity;
+
+	LoxChannel(int capacity){
+		this.capacity=capacity;
+		this.queue=new ArrayBlockingQueue<>(capacity);
+	}
+	void send(Object value,Cancellation cancellation) {
+		try {
+			while(!queue.offer(value==null?NIL:value,Cancellation.POLL_MILLIS,TimeUnit.MILLISECONDS)) {
+				cancellation.check(null);
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(null,"Interrupted while sending on a channel.");
+		}
+	}
+	Object receive(Cancellation cancellation) {
+		try {
+			Object value;
+			while((value=queue.poll(Cancellation.POLL_MILLIS,TimeUnit.MILLISECONDS))==null) {
+				cancellation.check(null);
+			}
+			return value==NIL?null:value;
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(null,"Interrupted while receiving from a channel.");
+		}
+	}
+	@Override
+	public String toString() {
+		return "<channel "+capacity+">";
+	}
+}
@@ -1,6 +1,5 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.List;
 import java.util.Map;
 
 class LoxClass implements LoxCallable {
@@ -13,13 +12,18 @@ class LoxClass implements LoxCallable {
 		this.name=name;
 		this.methods=methods;
 	}
+	//Walks up the superclass chain, the number of classes it had to go through is recorded for the metrics.
 	LoxFunction findMethod(String name) {
-		if(methods.containsKey(name)) {
-			return methods.get(name);
-		}
-		if(superClass !=null) {
-			return superClass.findMethod(name);
+		int depth=0;
+		for(LoxClass klass=this;klass!=null;klass=klass.superClass) {
+			LoxFunction method=klass.methods.get(name);
+			if(method!=null) {
+				InterpreterMetrics.methodLookup(depth);
+				return method;
+			}
+			depth++;
 		}
+		InterpreterMetrics.methodLookup(depth);
 		return null;
 	}
 	@Override 
@@ -27,11 +31,57 @@ class LoxClass implements LoxCallable {
 		return name;
 	}
 	@Override
-	public Object call(Interpreter interpreter,List<Object> arguments) {
+	public Object call(Interpreter interpreter,Object[] arguments) {
+		return construct(interpreter,arguments.length,null,null,null,null,arguments);
+	}
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return construct(interpreter,0,null,null,null,null,null);
+	}
+	@Override
+	public Object call1(Interpreter interpreter,Object a) {
+		return construct(interpreter,1,a,null,null,null,null);
+	}
+	@Override
+	public Object call2(Interpreter interpreter,Object a,Object b) {
+		return construct(interpreter,2,a,b,null,null,null);
+	}
+	@Override
+	public Object call3(Interpreter interpreter,Object a,Object b,Object c) {
+		return construct(interpreter,3,a,b,c,null,null);
+	}
+	@Override
+	public Object call4(Interpreter interpreter,Object a,Object b,Object c,Object d) {
+		return construct(interpreter,4,a,b,c,d,null);
+	}
+	//Hands the arguments on to the initializer through the entry point of the same arity.
+	private Object construct(Interpreter interpreter,int count,Object a,Object b,Object c,Object d,Object[] arguments) {
+		LoxEvents.Instantiation event=new LoxEvents.Instantiation();
+		event.begin();
 		LoxInstance instance=new LoxInstance(this);
+		interpreter.memory-=Budget.INSTANCE_BYTES;
+		interpreter.instancesCreated++;
 		LoxFunction initializer=findMethod("init");
 		if(initializer !=null) {
-			initializer.bind(instance).call(interpreter, arguments);
+			interpreter.callStack.push(name);
+			try {
+				LoxFunction bound=initializer.bind(instance);
+				switch(count) {
+				case 0: bound.call0(interpreter); break;
+				case 1: bound.call1(interpreter,a); break;
+				case 2: bound.call2(interpreter,a,b); break;
+				case 3: bound.call3(interpreter,a,b,c); break;
+				case 4: bound.call4(interpreter,a,b,c,d); break;
+				default: bound.call(interpreter,arguments); break;
+				}
+			}finally {
+				interpreter.callStack.pop();
+			}
+		}
+		event.end();
+		if(event.shouldCommit()) {
+			event.className=name;
+			event.commit();
 		}
 		return instance;
 	}
@@ -0,0 +1,106 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+//A resolved Program ready to be evaluated. Each eval runs in a fresh Interpreter, with the global and engine
+//scope bindings defined as Lox globals first (engine scope wins), and returns the value of the script's last
+//expression statement: numbers come back as Double, strings as String, booleans as Boolean and nil as null.
+//Lists come back as an unmodifiable java.util.List and maps as an unmodifiable java.util.Map in insertion order,
+//their elements converted the same way. Instances, functions, classes and the other values a Java caller couldn't
+//use come back as the String print shows for them, map keys too, so two instances of a class key only one entry.
+//A binding Lox has no type for is refused with a ScriptException.
+//print writes to the context's writer.
+//The jlox.fuel and jlox.memory attributes, looked up in the context like any other, set the Budget of each
+//eval. Without them it is unlimited. jlox.depth limits how deep calls nest, Budget.DEFAULT_DEPTH without it.
+//jlox.timeout cancels an eval after that many milliseconds.
+class LoxCompiledScript extends CompiledScript {
+	static final String FUEL="jlox.fuel";
+	static final String MEMORY="jlox.memory";
+	static final String DEPTH="jlox.depth";
+	static final String TIMEOUT="jlox.timeout";
+	private final ScriptEngine engine;
+	private final Program program;
+
+	LoxCompiledScript(ScriptEngine engine,Program program){
+		this.engine=engine;
+		this.program=program;
+	}
+	@Override
+	public Object eval(ScriptContext context) throws ScriptException {
+		Budget budget=new Budget(limit(context,FUEL),limit(context,MEMORY),depth(context));
+		Interpreter interpreter=new Interpreter(new ErrorReporter(System.err),new OutputSink(context.getWriter()),budget);
+		define(interpreter.globals,context.getBindings(ScriptContext.GLOBAL_SCOPE));
+		define(interpreter.globals,context.getBindings(ScriptContext.ENGINE_SCOPE));
+		long timeout=limit(context,TIMEOUT);
+		if(timeout!=Budget.UNLIMITED) interpreter.cancellation.timeout(timeout);
+		try {
+			return toJava(interpreter.run(program));
+		}catch(RuntimeError error) {
+			Object file=context.getAttribute(ScriptEngine.FILENAME);
+			ScriptException exception=new ScriptException(error.getMessage(),file==null?null:file.toString(),error.token.line);
+			exception.initCause(error);
+			throw exception;
+		}finally {
+			interpreter.cancellation.finish();
+		}
+	}
+	@Override
+	public ScriptEngine getEngine() {
+		return engine;
+	}
+	private static long limit(ScriptContext context,String name) {
+		Object value=context.getAttribute(name);
+		if(value==null) return Budget.UNLIMITED;
+		if(!(value instanceof Number)) throw new IllegalArgumentException(name+" must be a number.");
+		return ((Number)value).longValue();
+	}
+	private static int depth(ScriptContext context) {
+		long depth=limit(context,DEPTH);
+		return depth==Budget.UNLIMITED?Budget.DEFAULT_DEPTH:(int)Math.min(depth,Integer.MAX_VALUE);
+	}
+	private static void define(Environment globals,Bindings bindings) throws ScriptException {
+		if(bindings==null) return;
+		for(Map.Entry<String,Object> entry:bindings.entrySet()) {
+			globals.define(entry.getKey(), toLox(entry.getKey(),entry.getValue()));
+		}
+	}
+	//Lox only has doubles, every other Java number is widened on the way in. Any other object could only be printed
+	//and compared in Lox, that's more likely a mistake of the caller than what it meant.
+	private static Object toLox(String name,Object value) throws ScriptException {
+		if(value==null || value instanceof Double || value instanceof String || value instanceof Boolean) return value;
+		if(value instanceof Number) return ((Number)value).doubleValue();
+		if(value instanceof Character) return value.toString();
+		throw new ScriptException("Binding '"+name+"' is a "+value.getClass().getName()
+				+", Lox only takes numbers, strings, booleans and null.");
+	}
+	private static Object toJava(Object value) {
+		if(value==null || value instanceof Double || value instanceof String || value instanceof Boolean) return value;
+		if(value instanceof LoxList) {
+			Object[] elements=((LoxList)value).elements();
+			List<Object> list=new ArrayList<>(elements.length);
+			for(Object element:elements) {
+				list.add(toJava(element));
+			}
+			return Collections.unmodifiableList(list);
+		}
+		if(value instanceof LoxMap) {
+			Object[] entries=((LoxMap)value).entries();
+			Map<Object,Object> map=new LinkedHashMap<>();
+			for(int i=0;i<entries.length;i+=2) {
+				map.put(toJava(entries[i]),toJava(entries[i+1]));
+			}
+			return Collections.unmodifiableMap(map);
+		}
+		return Interpreter.stringify(value);
+	}
+}
@@ -0,0 +1,80 @@
+package com.craftinginterpreters.jlox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+//JDK Flight Recorder events for interpreter activity, so Lox level work shows up next to GC and JIT events in the same recording.
+//Record with e.g. java -XX:StartFlightRecording:filename=lox.jfr,jlox.FunctionCall#threshold=1ms ...
+//When recording is off begin/end/shouldCommit are no-ops and the event objects don't escape, so the JIT removes them.
+//The Java stack traces are turned off, the Lox one is what matters and it's on the error event.
+final class LoxEvents {
+	private LoxEvents() {}
+
+	@Name("jlox.FunctionCall")
+	@Label("Lox Function Call")
+	@Category("Lox")
+	@Description("A call of a Lox function that took longer than the threshold")
+	@Threshold("20 ms")
+	@StackTrace(false)
+	static class Call extends Event {
+		@Label("Function")
+		String function;
+		@Label("Declared At Line")
+		int line;
+	}
+
+	@Name("jlox.Instantiation")
+	@Label("Lox Instantiation")
+	@Category("Lox")
+	@Description("Creation of a Lox instance, including its initializer")
+	@Threshold("0 ms")
+	@StackTrace(false)
+	static class Instantiation extends Event {
+		@Label("Class")
+		String className;
+	}
+
+	@Name("jlox.RuntimeError")
+	@Label("Lox Runtime Error")
+	@Category("Lox")
+	@StackTrace(false)
+	static class Error extends Event {
+		@Label("Message")
+		String message;
+		@Label("Line")
+		int line;
+		@Label("Lox Stack Trace")
+		String loxTrace;
+	}
+
+	@Name("jlox.Phase")
+	@Label("Lox Phase")
+	@Category("Lox")
+	@Description("One stage of running a script: scan, parse, resolve or execute")
+	@Threshold("0 ms")
+	@StackTrace(false)
+	static class Phase extends Event {
+		@Label("Phase")
+		String phase;
+		//Also feeds the phase timers of InterpreterMetrics, transient keeps it out of the recording.
+		transient long startNanos;
+
+		static Phase start(String phase) {
+			Phase event=new Phase();
+			event.phase=phase;
+			event.startNanos=System.nanoTime();
+			event.begin();
+			return event;
+		}
+		void finish() {
+			end();
+			InterpreterMetrics.phase(phase, System.nanoTime()-startNanos);
+			if(shouldCommit()) commit();
+		}
+	}
+}
@@ -1,43 +1,156 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.List;
-
 class LoxFunction implements LoxCallable {
+	//Only for functions declared by the tree walker, which runs declaration.body itself.
 	private final Stmt.Function declaration;
+	private final Token name;
 	private final Environment closure;
 	private final boolean isInitializer;
+	//Null for functions declared by the tree walker.
+	private final Body body;
+	//A function body in the form of the engine that declared the function, with the name and parameters it was
+	//declared with so the function doesn't need its Stmt.Function.
+	interface Body {
+		Token name();
+		int arity();
+		String parameter(int index);
+		void execute(Interpreter interpreter,Environment environment);
+	}
 	LoxFunction(Stmt.Function declaration,boolean isInitializer,Environment closure) {
+		this(declaration,declaration.name,isInitializer,closure,null);
+	}
+	LoxFunction(Body body,boolean isInitializer,Environment closure) {
+		this(null,body.name(),isInitializer,closure,body);
+	}
+	private LoxFunction(Stmt.Function declaration,Token name,boolean isInitializer,Environment closure,Body body) {
 		this.declaration=declaration;
+		this.name=name;
 		this.isInitializer=isInitializer;
 		this.closure = closure;
+		this.body=body;
 	}
-	@Override
-	public Object call(Interpreter interpreter,List<Object> arguments) {
+	//The interpreter evaluates arguments straight into a fresh frame and then calls invoke(),
+	//the callN entry points below are for everyone else.
+	Environment frame() {
+		return new Environment(closure);
+	}
+	//Frame for a method called on instance without binding it, the way super calls go.
+	Environment frame(LoxInstance instance) {
+		return new Environment(self(instance));
+	}
+	private Environment self(LoxInstance instance) {
 		Environment environment=new Environment(closure);
-		for(int i=0;i<declaration.params.size();i++) {
-			environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+		environment.define("this",instance);
+		return environment;
+	}
+	Body body() {
+		return body;
+	}
+	String parameter(int index) {
+		if(body!=null) return body.parameter(index);
+		return declaration.params.get(index).lexeme;
+	}
+	@Override
+	public Object call(Interpreter interpreter,Object[] arguments) {
+		Environment environment=frame();
+		for(int i=0;i<arguments.length;i++) {
+			environment.define(parameter(i), arguments[i]);
+		}
+		return invoke(interpreter,environment);
+	}
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return invoke(interpreter,frame());
+	}
+	@Override
+	public Object call1(Interpreter interpreter,Object a) {
+		Environment environment=frame();
+		environment.define(parameter(0), a);
+		return invoke(interpreter,environment);
+	}
+	@Override
+	public Object call2(Interpreter interpreter,Object a,Object b) {
+		Environment environment=frame();
+		environment.define(parameter(0), a);
+		environment.define(parameter(1), b);
+		return invoke(interpreter,environment);
+	}
+	@Override
+	public Object call3(Interpreter interpreter,Object a,Object b,Object c) {
+		Environment environment=frame();
+		environment.define(parameter(0), a);
+		environment.define(parameter(1), b);
+		environment.define(parameter(2), c);
+		return invoke(interpreter,environment);
+	}
+	@Override
+	public Object call4(Interpreter interpreter,Object a,Object b,Object c,Object d) {
+		Environment environment=frame();
+		environment.define(parameter(0), a);
+		environment.define(parameter(1), b);
+		environment.define(parameter(2), c);
+		environment.define(parameter(3), d);
+		return invoke(interpreter,environment);
+	}
+	//Runs the body in environment, which already holds the arguments. It sits right on top of the scope
+	//holding this for a method, bound or not, that is where an initializer gets the instance it returns.
+	Object invoke(Interpreter interpreter,Environment environment) {
+		interpreter.memory-=Budget.ENVIRONMENT_BYTES;
+		interpreter.environmentsAllocated++;
+		//Natives and initializers call in here without going through a call expression.
+		if(interpreter.cancellation.requested()) interpreter.cancellation.check(name);
+		//The script frame is at the bottom of the call stack, so its depth is the calls in progress plus one.
+		if(interpreter.callStack.depth()>interpreter.maxDepth) {
+			throw new RuntimeError(name,"Stack overflow.");
 		}
+		interpreter.callStack.push(name.lexeme);
+		LoxEvents.Call event=new LoxEvents.Call();
+		event.begin();
 		try {
-			interpreter.executeBlock(declaration.body, environment);
+			if(body==null) {
+				interpreter.executeBlock(declaration.body, environment);
+			}else {
+				body.execute(interpreter,environment);
+			}
 		}catch(Returnval returnValue) {
-			if(isInitializer) return closure.getAt(0,"this");
+			if(isInitializer) return environment.enclosing.getAt(0,"this");
 			return returnValue.value;
+		}catch(RuntimeError error) {
+			error.fillLoxTrace(interpreter.callStack);
+			throw error;
+		}catch(StackOverflowError overflow) {
+			//The thread's stack is smaller than Budget.depth allows for. If building the error overflows again,
+			//the next call out tries with more room.
+			RuntimeError error=new RuntimeError(name,"Stack overflow.");
+			error.fillLoxTrace(interpreter.callStack);
+			throw error;
+		}finally {
+			interpreter.callStack.pop();
+			commit(event,name);
 		}
-		if(isInitializer) return closure.getAt(0,"this");
+		if(isInitializer) return environment.enclosing.getAt(0,"this");
 		return null;
 	}
+	//Ends the Call event of a call to the function declared as name, inlined calls record one too.
+	static void commit(LoxEvents.Call event,Token name) {
+		event.end();
+		if(event.shouldCommit()) {
+			event.function=name.lexeme;
+			event.line=name.line;
+			event.commit();
+		}
+	}
 	LoxFunction bind(LoxInstance instance) {
-		Environment environment=new Environment(closure);
-		environment.define("this",instance);
-		return new LoxFunction(declaration,isInitializer,environment);
+		return new LoxFunction(declaration,name,isInitializer,self(instance),body);
 	}
 	@Override 
 	public int arity() {
+		if(body!=null) return body.arity();
 		return declaration.params.size();
 	}
 	@Override 
 	public String toString() {
-		return "<fn "+ declaration.name.lexeme+ ">";
+		return "<fn "+ name.lexeme+ ">";
 		
 	}
-}
\ No newline at end of file
+}
@@ -1,28 +1,36 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+//An instance can be handed to any number of tasks, so its fields are a concurrent map: a get racing a set sees the
+//field either before or after it, never a broken map, and a field set before a send or a join is seen by the task
+//that receives or joins. Read-modify-write like this.count = this.count + 1 is still not atomic across tasks,
+//use a channel for that. Nil is masked the way Environment does it.
 class LoxInstance{
 	private LoxClass klass;
-	private final Map<String, Object> fields=new HashMap<>();
+	private final Map<String, Object> fields=new ConcurrentHashMap<>();
 	
 	LoxInstance(LoxClass klass){
 		this.klass=klass;
 	}
 	
 	Object get(Token name) {
-		if(fields.containsKey(name.lexeme)) {
-			return fields.get(name.lexeme);
-		}
+		Object value=fields.get(name.lexeme);
+		if(value!=null) return value==Environment.NIL?null:value;
 		
 		LoxFunction method=klass.findMethod(name.lexeme);
 		if(method!=null) return method.bind(this);
 		
 		throw new RuntimeError(name, "Undefined property '"+ name.lexeme+"'.");
 	}
+	//The method a call of name runs, unbound, or null if there is none or a field shadows it.
+	LoxFunction method(String name) {
+		if(fields.containsKey(name)) return null;
+		return klass.findMethod(name);
+	}
 	void set(Token name,Object value) {
-		fields.put(name.lexeme, value);
+		fields.put(name.lexeme, Environment.mask(value));
 	}
 	
 	@Override
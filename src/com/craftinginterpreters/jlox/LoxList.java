@@ -0,0 +1,79 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.Arrays;
+
+//Growable list for Lox. While every element is a number they are kept unboxed in a double[],
+//the first non-number moves everything to an Object[] for good.
+//Reading a number back boxes it again, the saving is in what the list retains and in walking it.
+//Every array the list grows into is charged to the memory budget of the interpreter that grows it.
+//Tasks can share a list, so every operation holds the list's lock. Unlike a channel it makes nobody wait for
+//anything, it only keeps a task from seeing the list halfway through growing or generalizing.
+class LoxList {
+	private static final int INITIAL_CAPACITY=8;
+	private double[] numbers=new double[INITIAL_CAPACITY];
+	private Object[] objects=null;
+	private int size=0;
+
+	synchronized int length() {
+		return size;
+	}
+	synchronized Object get(int index) {
+		if(objects==null) return numbers[index];
+		return objects[index];
+	}
+	synchronized void set(Interpreter interpreter,int index,Object value) {
+		if(objects==null) {
+			if(value instanceof Double) {
+				numbers[index]=(double)value;
+				return;
+			}
+			generalize(interpreter);
+		}
+		objects[index]=value;
+	}
+	synchronized void append(Interpreter interpreter,Object value) {
+		if(objects==null) {
+			if(value instanceof Double) {
+				if(size==numbers.length) {
+					interpreter.allocate(null,Budget.SLOT_BYTES*size*2);
+					numbers=Arrays.copyOf(numbers, size*2);
+				}
+				numbers[size++]=(double)value;
+				return;
+			}
+			generalize(interpreter);
+		}
+		if(size==objects.length) {
+			interpreter.allocate(null,Budget.SLOT_BYTES*size*2);
+			objects=Arrays.copyOf(objects, size*2);
+		}
+		objects[size++]=value;
+	}
+	//Copy of the elements, numbers boxed.
+	synchronized Object[] elements() {
+		Object[] elements=new Object[size];
+		for(int i=0;i<size;i++) {
+			elements[i]=get(i);
+		}
+		return elements;
+	}
+	private void generalize(Interpreter interpreter) {
+		interpreter.allocate(null,Budget.SLOT_BYTES*numbers.length);
+		objects=new Object[numbers.length];
+		for(int i=0;i<size;i++) {
+			objects[i]=numbers[i];
+		}
+		numbers=null;
+	}
+	@Override
+	public String toString() {
+		//Elements are printed outside the lock, two lists holding each other can be printed by two tasks at once.
+		Object[] elements=elements();
+		StringBuilder builder=new StringBuilder("[");
+		for(int i=0;i<elements.length;i++) {
+			if(i>0) builder.append(", ");
+			builder.append(Interpreter.stringify(elements[i]));
+		}
+		return builder.append("]").toString();
+	}
+}
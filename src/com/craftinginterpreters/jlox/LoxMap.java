@@ -0,0 +1,182 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.Arrays;
+
+//Hash map for Lox without per entry node objects.
+//Entries live in three parallel arrays (keys, values, hashes) in insertion order, which is also the iteration order.
+//The hash index is an int[] of entry positions (plus one, 0 is empty) probed linearly.
+//When the index gets too full a twice as large one is started and every put moves a few more entries into it,
+//lookups check the new index first and the old one until everything has been moved, so no put pays for a full rehash.
+//Removed entries leave a DELETED key behind, they're squeezed out the next time the index has to grow.
+//Every array the map grows into is charged to the memory budget of the interpreter that grows it.
+//Tasks can share a map, so every operation holds the map's lock, see LoxList.
+class LoxMap {
+	//nil keys are stored as this marker so null can mean "no entry".
+	private static final Object NIL=new Object();
+	private static final Object DELETED=new Object();
+	private static final int INITIAL_CAPACITY=8;
+	private static final int MIGRATE_PER_PUT=8;
+
+	private Object[] keys=new Object[INITIAL_CAPACITY];
+	private Object[] values=new Object[INITIAL_CAPACITY];
+	private int[] hashes=new int[INITIAL_CAPACITY];
+	//Entry slots handed out so far, including removed ones.
+	private int used=0;
+	private int size=0;
+
+	private int[] index=new int[INITIAL_CAPACITY*2];
+	//Index being replaced, it still holds entries migrated..migrateEnd-1.
+	private int[] oldIndex=null;
+	private int migrated=0;
+	private int migrateEnd=0;
+
+	static boolean isValidKey(Object key) {
+		return key==null || key instanceof Double || key instanceof String || key instanceof Boolean || key instanceof LoxInstance;
+	}
+	synchronized int length() {
+		return size;
+	}
+	synchronized Object get(Object key) {
+		Object masked=mask(key);
+		int position=find(masked,hash(masked));
+		return position<0?null:values[position];
+	}
+	synchronized boolean has(Object key) {
+		Object masked=mask(key);
+		return find(masked,hash(masked))>=0;
+	}
+	synchronized void put(Interpreter interpreter,Object key,Object value) {
+		Object masked=mask(key);
+		int hash=hash(masked);
+		int position=find(masked,hash);
+		if(position>=0) {
+			values[position]=value;
+			return;
+		}
+		if(oldIndex!=null) migrate(MIGRATE_PER_PUT);
+		if(used>=index.length/4*3) grow(interpreter);
+		if(used==keys.length) {
+			int capacity=keys.length*2;
+			//keys, values and hashes.
+			interpreter.allocate(null,3*Budget.SLOT_BYTES*capacity);
+			keys=Arrays.copyOf(keys, capacity);
+			values=Arrays.copyOf(values, capacity);
+			hashes=Arrays.copyOf(hashes, capacity);
+		}
+		keys[used]=masked;
+		values[used]=value;
+		hashes[used]=hash;
+		insert(index,hash,used);
+		used++;
+		size++;
+	}
+	synchronized Object remove(Object key) {
+		Object masked=mask(key);
+		int position=find(masked,hash(masked));
+		if(position<0) return null;
+		Object value=values[position];
+		keys[position]=DELETED;
+		values[position]=null;
+		size--;
+		return value;
+	}
+	synchronized LoxList keys(Interpreter interpreter) {
+		interpreter.allocate(null,Budget.LIST_BYTES);
+		LoxList list=new LoxList();
+		for(int i=0;i<used;i++) {
+			if(keys[i]!=DELETED) list.append(interpreter,unmask(keys[i]));
+		}
+		return list;
+	}
+	private int find(Object key,int hash) {
+		int position=probe(index,key,hash);
+		if(position<0 && oldIndex!=null) position=probe(oldIndex,key,hash);
+		return position;
+	}
+	private int probe(int[] table,Object key,int hash) {
+		int mask=table.length-1;
+		for(int slot=hash&mask;;slot=(slot+1)&mask) {
+			int entry=table[slot];
+			if(entry==0) return -1;
+			int position=entry-1;
+			if(hashes[position]==hash && (keys[position]==key || keys[position].equals(key))) return position;
+		}
+	}
+	private static void insert(int[] table,int hash,int position) {
+		int mask=table.length-1;
+		int slot=hash&mask;
+		while(table[slot]!=0) {
+			slot=(slot+1)&mask;
+		}
+		table[slot]=position+1;
+	}
+	//Lots of removed entries are cheaper to drop in one go than to carry into a bigger index.
+	private void grow(Interpreter interpreter) {
+		if(oldIndex!=null) migrate(migrateEnd-migrated);
+		if(size<used/2) {
+			compact();
+			return;
+		}
+		interpreter.allocate(null,Budget.SLOT_BYTES*index.length);
+		oldIndex=index;
+		index=new int[index.length*2];
+		migrated=0;
+		migrateEnd=used;
+	}
+	private void migrate(int count) {
+		int end=Math.min(migrated+count,migrateEnd);
+		for(;migrated<end;migrated++) {
+			if(keys[migrated]!=DELETED) insert(index,hashes[migrated],migrated);
+		}
+		if(migrated==migrateEnd) oldIndex=null;
+	}
+	private void compact() {
+		int live=0;
+		for(int i=0;i<used;i++) {
+			if(keys[i]==DELETED) continue;
+			keys[live]=keys[i];
+			values[live]=values[i];
+			hashes[live]=hashes[i];
+			live++;
+		}
+		Arrays.fill(keys, live, used, null);
+		Arrays.fill(values, live, used, null);
+		used=live;
+		Arrays.fill(index, 0);
+		for(int i=0;i<used;i++) {
+			insert(index,hashes[i],i);
+		}
+	}
+	//Copy of the entries in insertion order, each key followed by its value.
+	synchronized Object[] entries() {
+		Object[] entries=new Object[size*2];
+		int entry=0;
+		for(int i=0;i<used;i++) {
+			if(keys[i]==DELETED) continue;
+			entries[entry++]=unmask(keys[i]);
+			entries[entry++]=values[i];
+		}
+		return entries;
+	}
+	private static Object mask(Object key) {
+		return key==null?NIL:key;
+	}
+	private static Object unmask(Object key) {
+		return key==NIL?null:key;
+	}
+	private static int hash(Object key) {
+		int hash=key.hashCode();
+		return hash^(hash>>>16);
+	}
+	@Override
+	public String toString() {
+		//Entries are printed outside the lock, like LoxList does.
+		Object[] entries=entries();
+		StringBuilder builder=new StringBuilder("{");
+		for(int i=0;i<entries.length;i+=2) {
+			if(i>0) builder.append(", ");
+			builder.append(Interpreter.stringify(entries[i])).append(": ").append(Interpreter.stringify(entries[i+1]));
+		}
+		return builder.append("}").toString();
+	}
+}
@@ -0,0 +1,15 @@
+package com.craftinginterpreters.jlox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//Marks a static method as a Lox native, NativeModule picks these up. The Lox name defaults to the method name.
+//Parameters may be double, int, boolean, String, Object or any Lox runtime class, a leading Interpreter
+//parameter receives the calling interpreter. Numbers, booleans and void are converted back to Lox values.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface LoxNative {
+	String value() default "";
+}
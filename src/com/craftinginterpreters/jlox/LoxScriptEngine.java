@@ -0,0 +1,66 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+//JSR-223 engine. compile() does the scanning, parsing and resolving once, the CompiledScript it returns can then be
+//evaluated any number of times, from any thread, with different bindings. eval() is just compile followed by eval.
+class LoxScriptEngine extends AbstractScriptEngine implements Compilable {
+	private final ScriptEngineFactory factory;
+
+	LoxScriptEngine(ScriptEngineFactory factory){
+		this.factory=factory;
+	}
+	@Override
+	public CompiledScript compile(String script) throws ScriptException {
+		ByteArrayOutputStream errors=new ByteArrayOutputStream();
+		ErrorReporter reporter=new ErrorReporter(new PrintStream(errors,true,StandardCharsets.UTF_8));
+		Program program=Program.compile(script,reporter);
+		if(program==null) {
+			throw new ScriptException(errors.toString(StandardCharsets.UTF_8).trim());
+		}
+		return new LoxCompiledScript(this,program);
+	}
+	@Override
+	public CompiledScript compile(Reader script) throws ScriptException {
+		return compile(read(script));
+	}
+	@Override
+	public Object eval(String script,ScriptContext context) throws ScriptException {
+		return compile(script).eval(context);
+	}
+	@Override
+	public Object eval(Reader reader,ScriptContext context) throws ScriptException {
+		return eval(read(reader),context);
+	}
+	@Override
+	public Bindings createBindings() {
+		return new SimpleBindings();
+	}
+	@Override
+	public ScriptEngineFactory getFactory() {
+		return factory;
+	}
+	private static String read(Reader reader) throws ScriptException {
+		StringWriter writer=new StringWriter();
+		try {
+			reader.transferTo(writer);
+		}catch(IOException e) {
+			throw new ScriptException(e);
+		}
+		return writer.toString();
+	}
+}
@@ -0,0 +1,61 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.List;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+//javax.script entry point, found by ScriptEngineManager under the names "lox" and "jlox".
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+	private static final List<String> NAMES=List.of("lox","jlox");
+	private static final List<String> EXTENSIONS=List.of("lox");
+	private static final List<String> MIME_TYPES=List.of("application/x-lox","text/x-lox");
+
+	@Override
+	public String getEngineName() {return "jlox";}
+	@Override
+	public String getEngineVersion() {return "1.0";}
+	@Override
+	public List<String> getExtensions() {return EXTENSIONS;}
+	@Override
+	public List<String> getMimeTypes() {return MIME_TYPES;}
+	@Override
+	public List<String> getNames() {return NAMES;}
+	@Override
+	public String getLanguageName() {return "lox";}
+	@Override
+	public String getLanguageVersion() {return "1.0";}
+	//Every evaluation gets its own interpreter and bindings are only read, never written back.
+	@Override
+	public Object getParameter(String key) {
+		switch(key) {
+		case ScriptEngine.ENGINE: return getEngineName();
+		case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+		case ScriptEngine.LANGUAGE: return getLanguageName();
+		case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+		case ScriptEngine.NAME: return NAMES.get(0);
+		case "THREADING": return "STATELESS";
+		default: return null;
+		}
+	}
+	@Override
+	public String getMethodCallSyntax(String obj,String m,String... args) {
+		return obj+"."+m+"("+String.join(", ", args)+")";
+	}
+	@Override
+	public String getOutputStatement(String toDisplay) {
+		return "print \""+toDisplay.replace("\"", "")+"\";";
+	}
+	@Override
+	public String getProgram(String... statements) {
+		StringBuilder builder=new StringBuilder();
+		for(String statement:statements) {
+			builder.append(statement).append(";\n");
+		}
+		return builder.toString();
+	}
+	@Override
+	public ScriptEngine getScriptEngine() {
+		return new LoxScriptEngine(this);
+	}
+}
@@ -0,0 +1,44 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+//Handle returned by concurrent.spawn(), concurrent.join() waits for the task and gives back what its function returned.
+//A runtime error inside the task surfaces again from join() with the task's own line and Lox trace.
+class LoxTask {
+	private final String name;
+	private final Future<Object> future;
+
+	LoxTask(String name,Future<Object> future){
+		this.name=name;
+		this.future=future;
+	}
+	//Waits in slices so a cancelled execution doesn't stay blocked, the task itself stops on its own
+	//since it shares the cancellation.
+	Object join(Cancellation cancellation) {
+		try {
+			for(;;) {
+				try {
+					return future.get(Cancellation.POLL_MILLIS,TimeUnit.MILLISECONDS);
+				}catch(TimeoutException e) {
+					cancellation.check(null);
+				}
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(null,"Interrupted while joining "+this+".");
+		}catch(CancellationException e) {
+			throw new RuntimeError(null,this+" was cancelled.");
+		}catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeError) throw (RuntimeError)e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+	@Override
+	public String toString() {
+		return "<task "+name+">";
+	}
+}
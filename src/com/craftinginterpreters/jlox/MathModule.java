@@ -0,0 +1,31 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+//The math module: math.sqrt(2), math.floor(x) and so on.
+final class MathModule {
+	private MathModule() {}
+
+	@LoxNative static double abs(double x) {return Math.abs(x);}
+	@LoxNative static double sqrt(double x) {return Math.sqrt(x);}
+	@LoxNative static double floor(double x) {return Math.floor(x);}
+	@LoxNative static double ceil(double x) {return Math.ceil(x);}
+	//Halves round up, math.round(2.5) is 3 and math.round(-2.5) is -2. Not floor(x+0.5), the sum rounds
+	//0.49999999999999994 up to 1, and not Math.round, its long overflows past 2^63.
+	@LoxNative static double round(double x) {
+		double floor=Math.floor(x);
+		return x-floor>=0.5?floor+1:floor;
+	}
+	@LoxNative static double min(double a,double b) {return Math.min(a, b);}
+	@LoxNative static double max(double a,double b) {return Math.max(a, b);}
+	@LoxNative static double pow(double a,double b) {return Math.pow(a, b);}
+	@LoxNative static double exp(double x) {return Math.exp(x);}
+	@LoxNative static double log(double x) {return Math.log(x);}
+	@LoxNative static double sin(double x) {return Math.sin(x);}
+	@LoxNative static double cos(double x) {return Math.cos(x);}
+	@LoxNative static double tan(double x) {return Math.tan(x);}
+	@LoxNative static double atan2(double y,double x) {return Math.atan2(y, x);}
+	@LoxNative static double pi() {return Math.PI;}
+	//Uniform in [0,1).
+	@LoxNative static double random() {return ThreadLocalRandom.current().nextDouble();}
+}
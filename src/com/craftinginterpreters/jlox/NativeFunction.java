@@ -0,0 +1,81 @@
+package com.craftinginterpreters.jlox;
+
+import java.lang.invoke.MethodHandle;
+
+//A Java static method exposed to Lox. The handle has already been adapted by NativeModule to take the
+//interpreter plus one Object per Lox argument and return a Lox value, so a call of up to four arguments
+//is one invokeExact, only longer ones go through an array.
+//They hold no state and are shared by every interpreter.
+class NativeFunction implements LoxCallable {
+	final String name;
+	private final int arity;
+	private final MethodHandle handle;
+
+	NativeFunction(String name,int arity,MethodHandle handle){
+		this.name=name;
+		this.arity=arity;
+		this.handle=handle;
+	}
+	@Override
+	public int arity() {
+		return arity;
+	}
+	@Override
+	public Object call(Interpreter interpreter,Object[] arguments) {
+		Object[] all=new Object[arguments.length+1];
+		all[0]=interpreter;
+		System.arraycopy(arguments, 0, all, 1, arguments.length);
+		try {
+			return handle.invokeWithArguments(all);
+		}catch(Throwable e) {
+			throw rethrow(e);
+		}
+	}
+	@Override
+	public Object call0(Interpreter interpreter) {
+		try {
+			return (Object)handle.invokeExact(interpreter);
+		}catch(Throwable e) {
+			throw rethrow(e);
+		}
+	}
+	@Override
+	public Object call1(Interpreter interpreter,Object a) {
+		try {
+			return (Object)handle.invokeExact(interpreter,a);
+		}catch(Throwable e) {
+			throw rethrow(e);
+		}
+	}
+	@Override
+	public Object call2(Interpreter interpreter,Object a,Object b) {
+		try {
+			return (Object)handle.invokeExact(interpreter,a,b);
+		}catch(Throwable e) {
+			throw rethrow(e);
+		}
+	}
+	@Override
+	public Object call3(Interpreter interpreter,Object a,Object b,Object c) {
+		try {
+			return (Object)handle.invokeExact(interpreter,a,b,c);
+		}catch(Throwable e) {
+			throw rethrow(e);
+		}
+	}
+	@Override
+	public Object call4(Interpreter interpreter,Object a,Object b,Object c,Object d) {
+		try {
+			return (Object)handle.invokeExact(interpreter,a,b,c,d);
+		}catch(Throwable e) {
+			throw rethrow(e);
+		}
+	}
+	private RuntimeException rethrow(Throwable e) {
+		if(e instanceof RuntimeException) return (RuntimeException)e;
+		if(e instanceof Error) throw (Error)e;
+		return new IllegalStateException("Native '"+name+"' failed.", e);
+	}
+	@Override
+	public String toString() {return "<native fn>";}
+}
@@ -0,0 +1,116 @@
+package com.craftinginterpreters.jlox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//A named group of natives built from the @LoxNative methods of one or more classes.
+//All the argument checking and conversion is composed into each function's MethodHandle here, once,
+//instead of being redone on every call. A module is a Lox value itself, its functions are read with '.': math.sqrt(2).
+class NativeModule {
+	private static final MethodHandles.Lookup LOOKUP=MethodHandles.lookup();
+	final String name;
+	private final Map<String,NativeFunction> functions=new LinkedHashMap<>();
+
+	NativeModule(String name,Class<?>... types){
+		this.name=name;
+		for(Class<?> type:types) {
+			for(Method method:type.getDeclaredMethods()) {
+				LoxNative annotation=method.getAnnotation(LoxNative.class);
+				if(annotation==null) continue;
+				if(!Modifier.isStatic(method.getModifiers())) {
+					throw new IllegalArgumentException("Native "+method+" must be static.");
+				}
+				String functionName=annotation.value().isEmpty()?method.getName():annotation.value();
+				functions.put(functionName, bind(functionName,method));
+			}
+		}
+	}
+	NativeFunction function(String name) {
+		return functions.get(name);
+	}
+	Collection<NativeFunction> functions() {
+		return functions.values();
+	}
+	Object get(Token name) {
+		NativeFunction function=functions.get(name.lexeme);
+		if(function!=null) return function;
+		throw new RuntimeError(name, "Undefined property '"+ name.lexeme+"'.");
+	}
+	@Override
+	public String toString() {
+		return "<module "+name+">";
+	}
+	//Turns method into a handle of type (Interpreter,Object...)Object.
+	private static NativeFunction bind(String name,Method method) {
+		MethodHandle handle;
+		try {
+			handle=LOOKUP.unreflect(method);
+		}catch(IllegalAccessException e) {
+			throw new IllegalArgumentException("Can't access native "+method+".", e);
+		}
+		Class<?>[] parameters=method.getParameterTypes();
+		int first=0;
+		if(parameters.length>0 && parameters[0]==Interpreter.class) {
+			first=1;
+		}else {
+			handle=MethodHandles.dropArguments(handle, 0, Interpreter.class);
+		}
+		for(int i=first;i<parameters.length;i++) {
+			handle=MethodHandles.filterArguments(handle, 1+i-first, argument(parameters[i]));
+		}
+		handle=result(handle,method.getReturnType());
+		int arity=parameters.length-first;
+		return new NativeFunction(name,arity,handle.asType(MethodType.genericMethodType(arity).insertParameterTypes(0, Interpreter.class)));
+	}
+	private static MethodHandle argument(Class<?> type) {
+		try {
+			if(type==double.class) return LOOKUP.findStatic(NativeModule.class, "toNumber", MethodType.methodType(double.class,Object.class));
+			if(type==int.class) return LOOKUP.findStatic(NativeModule.class, "toInt", MethodType.methodType(int.class,Object.class));
+			if(type==boolean.class) return LOOKUP.findStatic(NativeModule.class, "toBoolean", MethodType.methodType(boolean.class,Object.class));
+			if(type==Object.class) return MethodHandles.identity(Object.class);
+			MethodHandle check=LOOKUP.findStatic(NativeModule.class, "checkType", MethodType.methodType(Object.class,Class.class,Object.class));
+			return MethodHandles.insertArguments(check, 0, type).asType(MethodType.methodType(type,Object.class));
+		}catch(ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	private static MethodHandle result(MethodHandle handle,Class<?> type) {
+		if(type==void.class) return MethodHandles.filterReturnValue(handle, MethodHandles.constant(Object.class, null));
+		if(type==int.class || type==long.class || type==float.class) {
+			return handle.asType(handle.type().changeReturnType(double.class));
+		}
+		return handle;
+	}
+	private static double toNumber(Object value) {
+		if(value instanceof Double) return (double)value;
+		throw new RuntimeError(null,"Expected a number.");
+	}
+	private static int toInt(Object value) {
+		if(value instanceof Double) {
+			double number=(double)value;
+			if(number==Math.rint(number) && number>=Integer.MIN_VALUE && number<=Integer.MAX_VALUE) return (int)number;
+		}
+		throw new RuntimeError(null,"Expected an integer.");
+	}
+	private static boolean toBoolean(Object value) {
+		if(value instanceof Boolean) return (boolean)value;
+		throw new RuntimeError(null,"Expected a boolean.");
+	}
+	private static Object checkType(Class<?> type,Object value) {
+		if(type.isInstance(value)) return value;
+		throw new RuntimeError(null,"Expected "+describe(type)+".");
+	}
+	//LoxList reads as "a list", String as "a string".
+	private static String describe(Class<?> type) {
+		String name=type.getSimpleName();
+		if(name.startsWith("Lox")) name=name.substring(3);
+		name=name.toLowerCase();
+		return ("aeiou".indexOf(name.charAt(0))>=0?"an ":"a ")+name;
+	}
+}
@@ -0,0 +1,27 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.List;
+
+//Every native a fresh interpreter starts with. The modules are built once per JVM and shared,
+//defining them in an interpreter's globals is just a few map puts.
+//To add natives write @LoxNative static methods and list their class here as a module. Only clock, which Lox
+//has always had, is a global of its own, everything else is reached through its module so scripts keep names
+//like list, get or map for themselves.
+final class Natives {
+	private Natives() {}
+
+	private static final NativeModule TIME=new NativeModule("time",TimeModule.class);
+	private static final List<NativeModule> MODULES=List.of(
+			new NativeModule("math",MathModule.class),
+			new NativeModule("string",StringModule.class),
+			new NativeModule("collections",CollectionsModule.class),
+			new NativeModule("concurrent",Concurrency.class),
+			TIME);
+
+	static void define(Environment globals) {
+		globals.define("clock", TIME.function("clock"));
+		for(NativeModule module:MODULES) {
+			globals.define(module.name, module);
+		}
+	}
+}
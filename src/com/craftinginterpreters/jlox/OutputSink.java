@@ -0,0 +1,78 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+//Where print writes to. The default is a large buffer in front of System.out which the interpreter flushes
+//when a run finishes or fails, instead of a locked and flushed System.out.println per print.
+//There is one such buffer per process, shared by every interpreter that doesn't get a sink of its own, so
+//creating an interpreter doesn't allocate one. A task spawned by a script can still be printing after the run
+//returns, so each task flushes when it finishes and the shared sink is flushed once more at exit.
+//Embedders point it at their own Writer or stream. Spawned tasks share their parent's sink, a whole line
+//is written under the sink's lock so lines from different tasks don't get mixed.
+class OutputSink {
+	private static final int BUFFER_SIZE=1<<16;
+	private final Writer writer;
+	//Room for the digits of any integral number printNumber formats itself.
+	private final char[] digits=new char[8];
+
+	OutputSink(Writer writer){
+		this.writer=writer;
+	}
+	static OutputSink stdout() {
+		return Stdout.SINK;
+	}
+	static OutputSink to(OutputStream out) {
+		return new OutputSink(new BufferedWriter(new OutputStreamWriter(out,Charset.defaultCharset()),BUFFER_SIZE));
+	}
+	synchronized void println(Object value) {
+		try {
+			if(value instanceof Double) {
+				printNumber((double)value);
+			}else {
+				writer.write(Interpreter.stringify(value));
+			}
+			writer.write('\n');
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	synchronized void flush() {
+		try {
+			writer.flush();
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	//Integral numbers below 1e7 are written digit by digit, that's exactly what stringify would give them
+	//(Double.toString switches to exponent notation from 1e7 on). Everything else goes through stringify.
+	private void printNumber(double value) throws IOException {
+		if(!Interpreter.isSmallInteger(value)) {
+			writer.write(Interpreter.stringify(value));
+			return;
+		}
+		int number=(int)value;
+		boolean negative=number<0;
+		if(negative) number=-number;
+		int position=digits.length;
+		do {
+			digits[--position]=(char)('0'+number%10);
+			number/=10;
+		}while(number!=0);
+		if(negative) digits[--position]='-';
+		writer.write(digits, position, digits.length-position);
+	}
+
+	//Created on first use, so processes that never print to System.out don't get the buffer or the hook.
+	private static final class Stdout {
+		static final OutputSink SINK=to(System.out);
+		static {
+			Runtime.getRuntime().addShutdownHook(new Thread(SINK::flush,"lox-stdout-flush"));
+		}
+	}
+}
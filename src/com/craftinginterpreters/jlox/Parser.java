@@ -3,16 +3,28 @@ package com.craftinginterpreters.jlox;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static com.craftinginterpreters.jlox.TokenType.*;
 import static com.craftinginterpreters.jlox.Stmt.*;
 
 class Parser{
 	private static class ParserError extends RuntimeException{}
-	private final List<Token> tokens;
-	private int current=0;
-	Parser(List<Token> tokens){
+	//Only the current token and the one before it are ever looked at, so tokens are pulled as the parser goes.
+	private final Supplier<Token> tokens;
+	private final ErrorReporter reporter;
+	private Token current;
+	private Token previous;
+	Parser(List<Token> tokens,ErrorReporter reporter){
+		this(tokens.iterator()::next,reporter);
+	}
+	Parser(Scanner scanner,ErrorReporter reporter){
+		this(scanner::next,reporter);
+	}
+	private Parser(Supplier<Token> tokens,ErrorReporter reporter){
 		this.tokens=tokens;
+		this.reporter=reporter;
+		this.current=tokens.get();
 	}
 // temporary hack to run parser for expressions
 //	Expr parse() {
@@ -31,6 +43,14 @@ class Parser{
 		}
 		return statements;
 	}
+	//A ProgramStream parses one top-level declaration at a time. next() returns null for one with a syntax error,
+	//the error has been reported.
+	boolean hasNext() {
+		return !isAtEnd();
+	}
+	Stmt next() {
+		return declaration();
+	}
 	private Stmt declaration() {
 		try {
 			if(match(CLASS)) return classDeclaration();
@@ -53,14 +73,14 @@ class Parser{
 		}
 		consume(LEFT_BRACE,"Expect '{' before class body.");
 		
-		List<Stmt.Function> methods=new ArrayList<>();
+		ArrayList<Stmt.Function> methods=new ArrayList<>();
 		while(!check(RIGHT_BRACE) && !isAtEnd()) {
 			methods.add(function("method"));
 		}
 		
 		consume(RIGHT_BRACE,"Expect '}' after class body.");
 		
-		return new Stmt.Class(name,superclass,methods);
+		return new Stmt.Class(name,superclass,trimmed(methods));
 	}
 	//Like other statement types adding a method that'll return a function statement
 	//the kind parameter is used so that later on when methods are passed into it
@@ -68,7 +88,7 @@ class Parser{
 	private Stmt.Function function(String kind) {
 		Token name= consume(IDENTIFIER, "Expect "+ kind +" name.");
 		consume(LEFT_PAREN,"Expect '(' after "+ kind + " name.");
-		List<Token> parameters = new ArrayList<>();
+		ArrayList<Token> parameters = new ArrayList<>();
 		if(!check(RIGHT_PAREN)) {
 			do {
 				if(parameters.size()>=255) {
@@ -81,7 +101,7 @@ class Parser{
 		
 		consume(LEFT_BRACE,"Expect '{' before "+ kind +" body.");
 		List<Stmt> body=block();
-		return new Stmt.Function(name,parameters,body);
+		return new Stmt.Function(name,trimmed(parameters),body);
 	}
 	//Variable expression accesses binding by looking up to the name and return it's value.
 	private Stmt varDeclaration() {
@@ -144,6 +164,7 @@ class Parser{
 		return new Stmt.Return(keyword, value);
 	}
 	private Stmt ifStatement() {
+		Token keyword=previous();
 		consume(LEFT_PAREN,"Expect '(' after 'if'.");
 		Expr condition=expression();
 		consume(RIGHT_PAREN,"Expect ')' after if condition");
@@ -153,18 +174,20 @@ class Parser{
 		if(match(ELSE)) {
 			elseBranch=statement();
 		}
-		return new Stmt.If(condition, thenBranch, elseBranch);
+		return new Stmt.If(keyword, condition, thenBranch, elseBranch);
 	}
 	private Stmt whileStatement() {
+		Token keyword=previous();
 		consume(LEFT_PAREN,"Expect '(' after 'if'.");
 		Expr condition=expression();
 		consume(RIGHT_PAREN,"Expect ')' after if condition");
 		
 		Stmt body=statement();
 		
-		return new Stmt.While(condition, body);
+		return new Stmt.While(keyword, condition, body);
 	}
 	private Stmt forStatement() {
+		Token keyword=previous();
 		consume(LEFT_PAREN,"Expect '(' after 'for'.");
 		Stmt initializer;
 		if(match(SEMICOLON)) {
@@ -191,28 +214,29 @@ class Parser{
 			body=new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
 		}
 		if(condition==null) condition=new Expr.Literal(true);
-		body=new Stmt.While(condition, body);
+		body=new Stmt.While(keyword, condition, body);
 		if(initializer !=null) {
 			body=new Stmt.Block(Arrays.asList(initializer, body));
 		}
 		return body;
 	}
 	private List<Stmt> block() {
-		List<Stmt> statements=new ArrayList<>();
+		ArrayList<Stmt> statements=new ArrayList<>();
 		
 		while (!check(RIGHT_BRACE) && !isAtEnd()) {
 			statements.add(declaration());
 		}
 		
 		consume(RIGHT_BRACE,"Expect '}' after block.");
-		return statements;
+		return trimmed(statements);
 	}
 	//we parse the expression and consume the subsequent semicolon symbol and emit the 
 	//syntax tree.
 	private Stmt printStatement() {
+		Token keyword=previous();
 		Expr value=expression();
 		consume(SEMICOLON,"Expect ';' after value.");
-		return new Stmt.Print(value);
+		return new Stmt.Print(keyword, value);
 	}
 	private Stmt expressionStatement() {
 		Expr value=expression();
@@ -300,7 +324,7 @@ class Parser{
 		return expr;
 	}
 	private Expr finishCall(Expr callee) {
-		List<Expr> arguments=new ArrayList<>();
+		ArrayList<Expr> arguments=new ArrayList<>();
 		if(!check(RIGHT_PAREN)) {
 			do {
 				if(arguments.size()>=255) {
@@ -311,15 +335,20 @@ class Parser{
 		}
 		Token paren=consume(RIGHT_PAREN,"Expect ')' after arguments");
 		
-		return new Expr.Call(callee, paren, arguments);
+		return new Expr.Call(callee, paren, trimmed(arguments));
+	}
+	//The lists stay in the AST for as long as the program, without the room ArrayList leaves to grow.
+	private static <T> List<T> trimmed(ArrayList<T> list) {
+		list.trimToSize();
+		return list;
 	}
 	private Expr primary() {
-		  if(match(FALSE)) return new Expr.Literal(FALSE);
-		  if(match(TRUE)) return new Expr.Literal(TRUE);
-		  if(match(NIL)) return new Expr.Literal(NIL);
+		  if(match(FALSE)) return new Expr.Literal(false);
+		  if(match(TRUE)) return new Expr.Literal(true);
+		  if(match(NIL)) return new Expr.Literal(null);
 		  
 		  if(match(NUMBER,STRING)) {
-			  return new Expr.Literal(previous().literal);
+			  return new Expr.Literal(((Token.Literal)previous()).value);
 		  }
 		  if(match(SUPER)) {
 			  Token keyword=previous();
@@ -345,7 +374,7 @@ class Parser{
 		throw error(peek(),message);
 	}
 	private ParserError error(Token token,String message) {
-		Lox.error(token, message);
+		reporter.error(token, message);
 		return new ParserError();
 	}
 	private void synchronize() {
@@ -381,16 +410,19 @@ class Parser{
 		return peek().type==type;
 	}
 	private Token advance() {
-		if(!isAtEnd()) current++;
-		return previous();
+		if(!isAtEnd()) {
+			previous=current;
+			current=tokens.get();
+		}
+		return previous;
 	}
 	private boolean isAtEnd() {
 		return peek().type==EOF;
 	}
 	private Token peek() {
-		return tokens.get(current);
+		return current;
 	}
 	private Token previous() {
-		return tokens.get(current-1);
+		return previous;
 	}
 }
\ No newline at end of file
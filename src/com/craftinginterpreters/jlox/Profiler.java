@@ -0,0 +1,93 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+//Sampling profiler for Lox code. A daemon thread periodically copies the interpreter's CallStack
+//and counts how often each distinct stack was seen.
+//The counts are written in the collapsed format flame graph tools read ("script;outer;inner 42"),
+//and summarised as a self/total table per function.
+class Profiler implements Runnable {
+	private final CallStack stack;
+	private final long intervalNanos;
+	private final Map<String,long[]> stacks=new HashMap<>();
+	private volatile boolean running;
+	private Thread thread;
+	private long samples=0;
+
+	Profiler(CallStack stack,long intervalMicros){
+		this.stack=stack;
+		this.intervalNanos=TimeUnit.MICROSECONDS.toNanos(intervalMicros);
+	}
+	void start() {
+		running=true;
+		thread=new Thread(this,"lox-profiler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	void stop() {
+		running=false;
+		try {
+			thread.join();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	@Override
+	public void run() {
+		while(running) {
+			LockSupport.parkNanos(intervalNanos);
+			String[] frames=stack.snapshot();
+			if(frames.length==0) continue;
+			stacks.computeIfAbsent(String.join(";", frames), key->new long[1])[0]++;
+			samples++;
+		}
+	}
+	void writeCollapsed(Path path) throws IOException {
+		try(PrintWriter writer=new PrintWriter(Files.newBufferedWriter(path,StandardCharsets.UTF_8))) {
+			for(Map.Entry<String,long[]> entry:stacks.entrySet()) {
+				writer.println(entry.getKey()+" "+entry.getValue()[0]);
+			}
+		}
+	}
+	//Self time counts the samples where the function was on top of the stack, total time the samples where it was anywhere on it.
+	//A recursive function is only counted once per sample in its total.
+	void printTable(PrintStream out) {
+		Map<String,long[]> functions=new HashMap<>();
+		for(Map.Entry<String,long[]> entry:stacks.entrySet()) {
+			String[] frames=entry.getKey().split(";");
+			long count=entry.getValue()[0];
+			Set<String> seen=new HashSet<>();
+			for(String frame:frames) {
+				if(seen.add(frame)) functions.computeIfAbsent(frame, key->new long[2])[1]+=count;
+			}
+			functions.get(frames[frames.length-1])[0]+=count;
+		}
+		List<Map.Entry<String,long[]>> rows=new ArrayList<>(functions.entrySet());
+		rows.sort((a,b)->Long.compare(b.getValue()[1], a.getValue()[1]));
+		double millisPerSample=intervalNanos/1_000_000.0;
+		long total=Math.max(samples,1);
+		out.printf("%d samples, %.3f ms interval%n", samples, millisPerSample);
+		out.printf("%12s %7s %12s %7s  %s%n", "total ms", "total%", "self ms", "self%", "function");
+		for(Map.Entry<String,long[]> row:rows) {
+			long self=row.getValue()[0];
+			long inclusive=row.getValue()[1];
+			out.printf("%12.1f %6.1f%% %12.1f %6.1f%%  %s%n",
+					inclusive*millisPerSample, 100.0*inclusive/total,
+					self*millisPerSample, 100.0*self/total,
+					row.getKey());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+//A compiled script: the statements from the Parser plus the scope distances the Resolver worked out.
+//A negative distance -1-slot marks a reference to a global, globals lists the names by slot and an
+//Interpreter caches the cell of each global it has looked up in an array indexed by slot.
+//Nothing in here changes after compile() returns, so one Program can be shared between threads and executed
+//any number of times. All the state of a run lives in the Interpreter doing it, one per execution.
+//The exception are the statements of a ProgramStream, which are run once by the Interpreter running the stream.
+//A flat only Program has the FlatProgram and the global names and nothing else, see flatOnly().
+final class Program {
+	final List<Stmt> statements;
+	final Map<Expr,Integer> locals;
+	final Map<Stmt.Function,Captures> captures;
+	final List<String> globals;
+	//Lowered the first time the flat engine runs the program.
+	private volatile FlatProgram flat;
+	//Converted the first time the closure engine runs the program.
+	private volatile ClosureProgram closures;
+	final boolean flatOnly;
+
+	Program(List<Stmt> statements,Map<Expr,Integer> locals,Map<Stmt.Function,Captures> captures,List<String> globals){
+		this.statements=Collections.unmodifiableList(new ArrayList<>(statements));
+		this.locals=Map.copyOf(locals);
+		this.captures=Map.copyOf(captures);
+		this.globals=List.copyOf(globals);
+		this.flatOnly=false;
+	}
+	//One statement of a ProgramStream, sharing the stream's locals and captures instead of a copy of them; the
+	//globals are a snapshot taken by the stream, since the resolver keeps appending to its list.
+	private Program(Stmt statement,Map<Expr,Integer> locals,Map<Stmt.Function,Captures> captures,List<String> globals){
+		this.statements=List.of(statement);
+		this.locals=locals;
+		this.captures=captures;
+		this.globals=globals;
+		this.flatOnly=false;
+	}
+	private Program(FlatProgram flat,List<String> globals){
+		this.statements=List.of();
+		this.locals=Map.of();
+		this.captures=Map.of();
+		this.globals=globals;
+		this.flat=flat;
+		this.flatOnly=true;
+	}
+	static Program ofStatement(Stmt statement,Map<Expr,Integer> locals,Map<Stmt.Function,Captures> captures,List<String> globals) {
+		return new Program(statement,locals,captures,globals);
+	}
+	FlatProgram flat() {
+		FlatProgram flat=this.flat;
+		if(flat==null) {
+			flat=FlatProgram.lower(this);
+			this.flat=flat;
+		}
+		return flat;
+	}
+	//The program lowered for the flat engine and nothing else: once this Program is dropped its statements and
+	//resolution can be collected, flat functions keep only their names and parameter names. It always runs on the
+	//flat engine, and can't be debugged, covered or extended by a prompt line.
+	Program flatOnly() {
+		return new Program(flat(),globals);
+	}
+	ClosureProgram closures() {
+		ClosureProgram closures=this.closures;
+		if(closures==null) {
+			closures=ClosureProgram.compile(this);
+			this.closures=closures;
+		}
+		return closures;
+	}
+	//Returns null if the source had errors, they have been reported to the reporter.
+	static Program compile(String source,ErrorReporter reporter) {
+		return compile(source,reporter,null);
+	}
+	//The prompt compiles line by line, functions declared on earlier lines still need their resolution
+	//so each line's Program carries the resolution of the previous one, global slots included.
+	static Program compile(String source,ErrorReporter reporter,Program previous) {
+		LoxEvents.Phase phase=LoxEvents.Phase.start("scan");
+		Scanner scanner=new Scanner(source,reporter);  
+		List<Token> tokens= scanner.scanTokens();
+		phase.finish();
+		phase=LoxEvents.Phase.start("parse");
+		Parser parser=new Parser(tokens,reporter);
+		List<Stmt> statements=parser.parse();
+		phase.finish();
+		if(reporter.hadError) return null;
+		phase=LoxEvents.Phase.start("resolve");
+		Resolver resolver=new Resolver(reporter,previous);
+		resolver.resolve(statements);
+		phase.finish();
+		if(reporter.hadError) return null;
+		return new Program(statements,resolver.locals(),resolver.captures(),resolver.globals());
+	}
+}
@@ -0,0 +1,51 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//A script compiled one top-level declaration at a time, so it can start running before the rest is even scanned and
+//never holds more of its AST than the statement running and the functions and classes declared so far.
+//Each declaration is parsed, resolved and handed out as a Program of its own. The Programs share the stream's
+//resolution, so functions declared by earlier ones keep working, and globals are late bound by slot as always, so a
+//function can use a global declared further down. Once a statement has run, release() drops what the resolution
+//kept for it outside functions and nothing else refers to the statement.
+//A syntax or resolution error stops the stream from handing out more statements, the rest of the source is still
+//parsed to report its errors too. Unlike Program.compile the statements before the error have already run by then.
+final class ProgramStream {
+	private final ErrorReporter reporter;
+	private final Scanner scanner;
+	private final Parser parser;
+	private final Resolver resolver;
+	//Read by tasks spawned from the stream while the stream keeps adding to them.
+	private final Map<Expr,Integer> locals=new ConcurrentHashMap<>();
+	private final Map<Stmt.Function,Captures> captures=new ConcurrentHashMap<>();
+	private final List<Expr> topLevel=new ArrayList<>();
+
+	ProgramStream(String source,ErrorReporter reporter){
+		this.reporter=reporter;
+		this.scanner=new Scanner(source,reporter);
+		this.parser=new Parser(scanner,reporter);
+		this.resolver=new Resolver(reporter,locals,captures,topLevel);
+	}
+	//The next statement to run, null at the end of the source or once there has been an error.
+	Program next() {
+		while(parser.hasNext()) {
+			Stmt statement=parser.next();
+			scanner.forgetValues();
+			if(reporter.hadError) continue;
+			resolver.resolve(List.of(statement));
+			if(reporter.hadError) continue;
+			return Program.ofStatement(statement,locals,captures,List.copyOf(resolver.globals()));
+		}
+		return null;
+	}
+	//Called once the statement next() returned last has run.
+	void release() {
+		for(Expr expr:topLevel) {
+			locals.remove(expr);
+		}
+		topLevel.clear();
+	}
+}
@@ -1,16 +1,68 @@
 package com.craftinginterpreters.jlox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
-	private final Interpreter interpreter;
+	private final ErrorReporter reporter;
+	//Scope distance of every local variable reference, handed to the Program once resolution is done.
+	//References to globals are in here too, as -1-slot, see Program.
+	private final Map<Expr, Integer> locals;
+	//Slot of every global name referenced so far, slots are never reused.
+	private final Map<String, Integer> globalSlots=new HashMap<>();
+	private final List<String> globals;
+	//What every function declaration captures from its enclosing scopes, see Captures.
+	private final Map<Stmt.Function, Captures> captures;
 	private final Stack<Map<String,Boolean>> scopes=new Stack();
+	//The functions being resolved, innermost last.
+	private final List<FunctionScope> functions=new ArrayList<>();
 	private FunctionType currentFunction=FunctionType.NONE;
-	Resolver(Interpreter interpreter){
-		this.interpreter=interpreter;
+	//References made outside every function, null unless resolving a stream, see ProgramStream.
+	private final List<Expr> topLevel;
+	Resolver(ErrorReporter reporter){
+		this(reporter,null);
+	}
+	//Continues the resolution of previous, if there is one.
+	Resolver(ErrorReporter reporter,Program previous){
+		this.reporter=reporter;
+		this.locals=previous==null?new HashMap<>():new HashMap<>(previous.locals);
+		this.captures=previous==null?new HashMap<>():new HashMap<>(previous.captures);
+		this.globals=previous==null?new ArrayList<>():new ArrayList<>(previous.globals);
+		for(int i=0;i<globals.size();i++) {
+			globalSlots.put(globals.get(i),i);
+		}
+		this.topLevel=null;
+	}
+	//Resolves a stream one statement at a time into locals and captures, which the stream's executions read as they
+	//grow. The references outside functions also go into topLevel, they aren't needed once their statement ran.
+	Resolver(ErrorReporter reporter,Map<Expr,Integer> locals,Map<Stmt.Function,Captures> captures,List<Expr> topLevel){
+		this.reporter=reporter;
+		this.locals=locals;
+		this.captures=captures;
+		this.globals=new ArrayList<>();
+		this.topLevel=topLevel;
+	}
+	Map<Expr,Integer> locals() {
+		return locals;
+	}
+	Map<Stmt.Function,Captures> captures() {
+		return captures;
+	}
+	List<String> globals() {
+		return globals;
+	}
+	//base is the first scope that belongs to the function: its parameters, or 'this' for a method since
+	//that is bound on top of the closure too.
+	private static final class FunctionScope {
+		final int base;
+		final Map<String,Integer> captures=new LinkedHashMap<>();
+		FunctionScope(int base){
+			this.base=base;
+		}
 	}
 	private enum FunctionType {
 		NONE,
@@ -38,7 +90,7 @@ class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
 		declare(stmt.name);
 		define(stmt.name);
 		if(stmt.superclass !=null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-			Lox.error(stmt.superclass.name, "A class can't inherit from itself");
+			reporter.error(stmt.superclass.name, "A class can't inherit from itself");
 		}
 		if(stmt.superclass!=null) {
 			currentClass=ClassType.SUBCLASS;
@@ -82,11 +134,11 @@ class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
 	@Override
 	public Void visitReturnStmt(Stmt.Return stmt) {
 		if(currentFunction==FunctionType.NONE) {
-			Lox.error(stmt.keyword, "Can't return from top-level code.");
+			reporter.error(stmt.keyword, "Can't return from top-level code.");
 		}
 		if(stmt.value!=null) {
 			if(currentFunction == FunctionType.INITIALIZER) {
-				Lox.error(stmt.keyword,"Can't return value from an initializer.");
+				reporter.error(stmt.keyword,"Can't return value from an initializer.");
 			}
 			resolve(stmt.value);
 		}
@@ -116,11 +168,14 @@ class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
 	@Override
 	public Void visitSuperExpr(Expr.Super expr) {
 		if(currentClass==ClassType.NONE) {
-			Lox.error(expr.keyword, "Can't use 'super' outside of a class.");
+			reporter.error(expr.keyword, "Can't use 'super' outside of a class.");
 		}else if(currentClass != ClassType.SUBCLASS) {
-			Lox.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+			reporter.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
 		}
 		resolveLocal(expr,expr.keyword);
+		//The interpreter finds 'this' right below 'super', a closure that uses super has to carry it along.
+		int scope=declaration("this");
+		if(scope>=0) capture("this",scope);
 		return null;
 	}
 	@Override
@@ -131,7 +186,7 @@ class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
 	@Override
 	public Void visitThisExpr(Expr.This expr) {
 		if(currentClass==ClassType.NONE) {
-			Lox.error(expr.keyword, "Can't use 'this' outside of class.") ;
+			reporter.error(expr.keyword, "Can't use 'this' outside of class.") ;
 		}
 		resolveLocal(expr,expr.keyword);
 		return null;
@@ -182,7 +237,7 @@ class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
 	@Override
 	public Void visitVariableExpr(Expr.Variable expr) {
 		if(!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme)==Boolean.FALSE) {
-			Lox.error(expr.name, "Can't read local variable in its own initializer");
+			reporter.error(expr.name, "Can't read local variable in its own initializer");
 		}
 		resolveLocal(expr,expr.name);
 		return null;
@@ -215,7 +270,7 @@ class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
 		
 		Map<String,Boolean> scope=scopes.peek();
 		if(scope.containsKey(name.lexeme)) {
-			Lox.error(name, "Already a variable with this name in this scope.");
+			reporter.error(name, "Already a variable with this name in this scope.");
 		}
 		scope.put(name.lexeme, false);
 	}
@@ -224,16 +279,42 @@ class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
 		scopes.peek().put(name.lexeme, true);
 	}
 	private void resolveLocal(Expr expr, Token name) {
+		if(topLevel!=null && functions.isEmpty()) topLevel.add(expr);
+		int scope=declaration(name.lexeme);
+		if(scope<0) {
+			locals.put(expr,-1-globalSlot(name.lexeme));
+			return;
+		}
+		locals.put(expr,scopes.size()-1-scope);
+		capture(name.lexeme,scope);
+	}
+	private int globalSlot(String name) {
+		Integer slot=globalSlots.get(name);
+		if(slot!=null) return slot;
+		globals.add(name);
+		globalSlots.put(name,globals.size()-1);
+		return globals.size()-1;
+	}
+	private int declaration(String name) {
 		for(int i=scopes.size()-1;i>=0;i--) {
-			if(scopes.get(i).containsKey(name.lexeme)) {
-				interpreter.resolve(expr,scopes.size()-1-i);
-				return;
-			}
+			if(scopes.get(i).containsKey(name)) return i;
+		}
+		return -1;
+	}
+	//A variable declared in scope is captured by every function being resolved that starts above it.
+	private void capture(String name,int scope) {
+		for(int i=functions.size()-1;i>=0;i--) {
+			FunctionScope function=functions.get(i);
+			if(function.base<=scope) return;
+			function.captures.put(name,function.base-1-scope);
 		}
 	}
 	private void resolveFunction(Stmt.Function function,FunctionType type) {
 		FunctionType enclosingFunction=currentFunction;
 		currentFunction=type;
+		boolean method=type==FunctionType.METHOD || type==FunctionType.INITIALIZER;
+		FunctionScope scope=new FunctionScope(method?scopes.size()-1:scopes.size());
+		functions.add(scope);
 		beginScope();
 		for(Token param : function.params) {
 			declare(param);
@@ -241,6 +322,13 @@ class Resolver implements Expr.Visitor<Void>,Stmt.Visitor<Void>{
 		}
 		resolve(function.body);
 		endScope();
+		functions.remove(functions.size()-1);
+		String[] names=scope.captures.keySet().toArray(new String[0]);
+		int[] distances=new int[names.length];
+		for(int i=0;i<names.length;i++) {
+			distances[i]=scope.captures.get(names[i]);
+		}
+		captures.put(function,names.length==0?Captures.NONE:new Captures(names,distances));
 		currentFunction=enclosingFunction;
 	}
 }
\ No newline at end of file
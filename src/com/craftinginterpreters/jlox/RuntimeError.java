@@ -1,10 +1,16 @@
 package com.craftinginterpreters.jlox;
 
 class RuntimeError extends RuntimeException {
+	//Natives don't know where they were called from, they pass null and visitCallExpr rethrows with the call site.
 	final Token token;
+	//Lox level stack trace, filled in by the innermost function the error unwinds through.
+	String loxTrace;
 	
 	RuntimeError(Token token,String message) {
 		super(message);
 		this.token=token;
 	}
+	void fillLoxTrace(CallStack stack) {
+		if(loxTrace==null) loxTrace=stack.trace(token.line);
+	}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.craftinginterpreters.jlox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,7 +10,6 @@ import static com.craftinginterpreters.jlox.TokenType.*;
 
 class Scanner{
 	private final String source;
-	private final List<Token> tokens=new ArrayList<>();
 	private static final Map<String,TokenType> keywords;
 	static {
 		keywords=new HashMap<>();
@@ -34,10 +34,53 @@ class Scanner{
 	private int current=0;
 	private int line=1;
 	
-	Scanner(String source){
+	private final ErrorReporter reporter;
+	//One String per lexeme and one Double or String per literal value, and one token per lexeme on the current line,
+	//so the tokens a Program keeps share their text and none of them hold on to the source. Every type but
+	//identifiers and literals always has the same lexeme, those tokens are looked up by type.
+	private final Map<String,String> lexemes=new HashMap<>();
+	//Literal values are only shared until forgetValues(), a stream doesn't keep the ones it has run.
+	private final Map<Object,Object> values=new HashMap<>();
+	private final Map<String,Token> namesOnLine=new HashMap<>();
+	private final Token[] fixedOnLine=new Token[TokenType.values().length];
+	private final String[] fixedLexemes=new String[TokenType.values().length];
+	private int onLine=0;
+	//Set by addToken for next() to hand out.
+	private Token scanned;
+	private Token eof;
+	
+	Scanner(String source,ErrorReporter reporter){
 		this.source=source;
+		this.reporter=reporter;
 	}
 	List<Token> scanTokens(){
+		List<Token> tokens=new ArrayList<>();
+		Token token;
+		do {
+			token=next();
+			tokens.add(token);
+		}while(token.type!=EOF);
+		return tokens;
+	}
+	//The next token, EOF at the end of the source and from then on. A Parser can pull tokens one at a time
+	//instead of scanning the whole source up front.
+	Token next() {
+		while(!isAtEnd()) {
+			start=current;
+			scanToken();
+			if(scanned!=null) {
+				Token token=scanned;
+				scanned=null;
+				return token;
+			}
+		}
+		if(eof==null) eof=new Token(EOF,"",line);
+		return eof;
+	}
+	void forgetValues() {
+		values.clear();
+	}
+	private void scanToken(){
 		char c=advance();
 		switch(c) {
 		case '(':addToken(LEFT_PAREN);break;
@@ -91,24 +134,27 @@ class Scanner{
 				identifier();
 			}
 			else {
-			Lox.error(current,line, "Unexpected character.");
+			reporter.error(current,line, "Unexpected character.");
 			}
 			break;
 		}
-		while(!isAtEnd()) {
-			start=current;
-			scanTokens();
-		}
-		tokens.add(new Token(EOF,"",null,line));
-		return tokens;
 	}
 	private void identifier() {
 		while(isAlphaNumeric(peek())) advance();
 		
 		String text=source.substring(start,current);
 		TokenType type=keywords.get(text);
-		if(type==null) type=IDENTIFIER;
-		addToken(type);
+		if(type!=null) {
+			addToken(type);
+			return;
+		}
+		startLine();
+		Token token=namesOnLine.get(text);
+		if(token==null) {
+			token=new Token(IDENTIFIER,lexemes.computeIfAbsent(text,key->key),line);
+			namesOnLine.put(token.lexeme,token);
+		}
+		scanned=token;
 	}
 	private void number() {
 		while(isDigit(peek())) advance();
@@ -117,8 +163,7 @@ class Scanner{
 			
 			while(isDigit(peek())) advance();
 		}
-		System.out.println();
-		addToken(NUMBER,Double.parseDouble(source.substring(start,current)));
+		addToken(NUMBER,intern(Double.parseDouble(source.substring(start,current))));
 	}
 	private void string() {
 		while(peek()!='"' && !isAtEnd()) {
@@ -126,11 +171,11 @@ class Scanner{
 			advance();
 		}
 		if(isAtEnd()) {
-			Lox.error(current,line, "Unterminated string.");
+			reporter.error(current,line, "Unterminated string.");
 			return;
 		}
 		advance();
-		String value=source.substring(start+1,current-1);
+		String value=intern(source.substring(start+1,current-1));
 		addToken(STRING,value); 
 	}
 	private boolean match(char expected) {
@@ -166,11 +211,32 @@ class Scanner{
 		return source.charAt(current++);
 	}
 	private void addToken(TokenType type) {
-		addToken(type,null);
+		startLine();
+		Token token=fixedOnLine[type.ordinal()];
+		if(token==null) {
+			String lexeme=fixedLexemes[type.ordinal()];
+			if(lexeme==null) {
+				lexeme=source.substring(start,current);
+				fixedLexemes[type.ordinal()]=lexeme;
+			}
+			token=new Token(type,lexeme,line);
+			fixedOnLine[type.ordinal()]=token;
+		}
+		scanned=token;
 	}
+	//The Parser copies the value out and drops the token, its lexeme isn't worth sharing.
 	private void addToken(TokenType type,Object literal) {
-		String text=source.substring(start,current);
-		tokens.add(new Token(type,text,literal,line));
+		scanned=new Token.Literal(type,source.substring(start,current),literal,line);
+	}
+	private void startLine() {
+		if(line==onLine) return;
+		namesOnLine.clear();
+		Arrays.fill(fixedOnLine,null);
+		onLine=line;
+	}
+	@SuppressWarnings("unchecked")
+	private <T> T intern(T value) {
+		return (T)values.computeIfAbsent(value,key->key);
 	}
 	
 }
\ No newline at end of file
@@ -71,7 +71,8 @@ abstract class Stmt {
     final List<Stmt> body;
   }
  static class If extends Stmt {
-    If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+    If(Token keyword, Expr condition, Stmt thenBranch, Stmt elseBranch) {
+      this.keyword = keyword;
       this.condition = condition;
       this.thenBranch = thenBranch;
       this.elseBranch = elseBranch;
@@ -82,12 +83,14 @@ abstract class Stmt {
        return visitor.visitIfStmt(this);
     }
 
+    final Token keyword;
     final Expr condition;
     final Stmt thenBranch;
     final Stmt elseBranch;
   }
  static class Print extends Stmt {
-    Print(Expr expression) {
+    Print(Token keyword, Expr expression) {
+      this.keyword = keyword;
       this.expression = expression;
     }
 
@@ -96,6 +99,7 @@ abstract class Stmt {
        return visitor.visitPrintStmt(this);
     }
 
+    final Token keyword;
     final Expr expression;
   }
  static class Return extends Stmt {
@@ -127,7 +131,8 @@ abstract class Stmt {
     final Expr initializer;
   }
  static class While extends Stmt {
-    While(Expr condition, Stmt body) {
+    While(Token keyword, Expr condition, Stmt body) {
+      this.keyword = keyword;
       this.condition = condition;
       this.body = body;
     }
@@ -137,6 +142,7 @@ abstract class Stmt {
        return visitor.visitWhileStmt(this);
     }
 
+    final Token keyword;
     final Expr condition;
     final Stmt body;
   }
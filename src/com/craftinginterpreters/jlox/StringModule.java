@@ -0,0 +1,39 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.regex.Pattern;
+
+//The string module: string.length("abc"), string.substring(s,1,3) and so on.
+//Indices are zero based and a missing substring is reported as -1, like Java.
+final class StringModule {
+	//Decimal numbers only: parseDouble on its own also takes NaN, Infinity, hex and Java's d and f suffixes.
+	private static final Pattern NUMBER=Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+
+	private StringModule() {}
+
+	@LoxNative static int length(String s) {return s.length();}
+	@LoxNative static String substring(String s,int start,int end) {
+		if(start<0 || end>s.length() || start>end) throw new RuntimeError(null,"Substring range out of bounds.");
+		return s.substring(start, end);
+	}
+	@LoxNative static int indexOf(String s,String part) {return s.indexOf(part);}
+	@LoxNative static boolean contains(String s,String part) {return s.contains(part);}
+	@LoxNative static boolean startsWith(String s,String prefix) {return s.startsWith(prefix);}
+	@LoxNative static boolean endsWith(String s,String suffix) {return s.endsWith(suffix);}
+	@LoxNative static String upper(String s) {return s.toUpperCase();}
+	@LoxNative static String lower(String s) {return s.toLowerCase();}
+	@LoxNative static String trim(String s) {return s.strip();}
+	@LoxNative static String repeat(String s,int count) {
+		if(count<0) throw new RuntimeError(null,"Repeat count can't be negative.");
+		return s.repeat(count);
+	}
+	//Same text print would show.
+	@LoxNative static String str(Object value) {return Interpreter.stringify(value);}
+	//nil if the text isn't a number.
+	@LoxNative static Object number(String s) {
+		s=s.strip();
+		if(!NUMBER.matcher(s).matches()) return null;
+		double value=Double.parseDouble(s);
+		//1e999 is a number too big for a double.
+		return Double.isFinite(value)?value:null;
+	}
+}
@@ -0,0 +1,337 @@
+package com.craftinginterpreters.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+//Runs .lox test scripts against the expectations written in their comments, all in one JVM and on every core.
+//  print 1; // expect: 1                         a line print writes, in order
+//  x.y; // expect runtime error: Undefined ...   the runtime error the script stops with, on this line
+//  var 1; // Error at '1': Expect ...             a compile error reported for this line
+//  // [line 7] Error at end: Expect ...           a compile error reported for another line
+//  f(); // breakpoint                             runs the script debugged, each stop prints "stop at line L in
+//                                                 f, script" between the script's own output and continues
+//  f(); // expect hits: 3                         runs the script covered, this line runs this many times
+//A script with a breakpoint or a hit count runs on the closure engine whatever the --engine, Interpreter.debug and
+//Interpreter.cover switch to it.
+//Each test gets its own Interpreter, ErrorReporter and OutputSink writing into buffers, scripts share nothing but
+//the read only natives, so they run in parallel without seeing each other's output or globals.
+//Arguments are .lox files or directories to search for them. Exits with 1 if any test fails.
+//The conformance suite is test/ at the root of the repository, every engine has to pass all of it.
+final class TestRunner {
+	private static final String USAGE="Usage:testlox [--engine=tree|flat|closure] [--threads=n] [--timeout=ms] [--slowest=n] path...";
+	private static final Pattern EXPECTED_OUTPUT=Pattern.compile("// expect: ?(.*)");
+	private static final Pattern EXPECTED_RUNTIME_ERROR=Pattern.compile("// expect runtime error: (.+)");
+	private static final Pattern EXPECTED_ERROR=Pattern.compile("// (Error.*)");
+	private static final Pattern BREAKPOINT=Pattern.compile("// breakpoint\\b");
+	private static final Pattern EXPECTED_HITS=Pattern.compile("// expect hits: (\\d+)");
+	private static final Pattern EXPECTED_ERROR_AT_LINE=Pattern.compile("// \\[line (\\d+)\\] (Error.*)");
+	private static final Pattern RUNTIME_ERROR_LINE=Pattern.compile("\\[line ?(\\d+)\\]");
+	//ErrorReporter writes [lineN] and for scanner errors the position, tests are written with [line N].
+	private static final Pattern COMPILE_ERROR=Pattern.compile("\\[line ?(\\d+)\\](?:\\[At Position \\d+\\])? ?(.*)");
+
+	private final Engine engine;
+	private final long timeoutMillis;
+
+	private TestRunner(Engine engine,long timeoutMillis){
+		this.engine=engine;
+		this.timeoutMillis=timeoutMillis;
+	}
+
+	public static void main(String[] args) throws IOException,InterruptedException{
+		Engine engine=Engine.TREE;
+		int threads=Runtime.getRuntime().availableProcessors();
+		long timeout=10_000;
+		int slowest=10;
+		List<Path> paths=new ArrayList<>();
+		for(String arg:args) {
+			if(arg.startsWith("--engine=")) {
+				engine=engine(arg.substring("--engine=".length()));
+			}else if(arg.startsWith("--threads=")) {
+				threads=number(arg.substring("--threads=".length()));
+			}else if(arg.startsWith("--timeout=")) {
+				timeout=number(arg.substring("--timeout=".length()));
+			}else if(arg.startsWith("--slowest=")) {
+				slowest=number(arg.substring("--slowest=".length()));
+			}else if(arg.startsWith("--")) {
+				usage();
+			}else {
+				paths.add(Paths.get(arg));
+			}
+		}
+		if(paths.isEmpty() || threads<1) usage();
+		List<Path> tests=find(paths);
+		long start=System.nanoTime();
+		List<Result> results=new TestRunner(engine,timeout).runAll(tests,threads);
+		long elapsed=(System.nanoTime()-start)/1_000_000;
+		int failed=report(results,slowest,System.out);
+		System.out.println((results.size()-failed)+" passed, "+failed+" failed, "+results.size()+" tests in "+elapsed+" ms.");
+		System.exit(failed==0?0:1);
+	}
+	private static Engine engine(String name) {
+		for(Engine engine:Engine.values()) {
+			if(engine.name().equalsIgnoreCase(name)) return engine;
+		}
+		usage();
+		return null;
+	}
+	private static int number(String text) {
+		try {
+			return Integer.parseInt(text);
+		}catch(NumberFormatException e) {
+			usage();
+			return 0;
+		}
+	}
+	private static void usage() {
+		System.out.println(USAGE);
+		System.exit(64);
+	}
+	private static List<Path> find(List<Path> paths) throws IOException {
+		List<Path> tests=new ArrayList<>();
+		for(Path path:paths) {
+			if(!Files.isDirectory(path)) {
+				tests.add(path);
+				continue;
+			}
+			try(Stream<Path> files=Files.walk(path)) {
+				tests.addAll(files.filter(file->file.toString().endsWith(".lox")).sorted().collect(Collectors.toList()));
+			}
+		}
+		return tests;
+	}
+
+	List<Result> runAll(List<Path> tests,int threads) throws InterruptedException {
+		ExecutorService pool=Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Result>> futures=new ArrayList<>();
+			for(Path test:tests) {
+				futures.add(pool.submit(()->run(test)));
+			}
+			List<Result> results=new ArrayList<>();
+			for(Future<Result> future:futures) {
+				try {
+					results.add(future.get());
+				}catch(ExecutionException e) {
+					throw new IllegalStateException("Test runner failed.",e.getCause());
+				}
+			}
+			return results;
+		}finally {
+			pool.shutdownNow();
+		}
+	}
+	Result run(Path test) {
+		String source;
+		try {
+			source=Files.readString(test,StandardCharsets.UTF_8);
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Expectations expected=new Expectations(source);
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		ByteArrayOutputStream err=new ByteArrayOutputStream();
+		Coverage coverage=expected.hits.isEmpty()?null:new Coverage();
+		long start=System.nanoTime();
+		try(PrintStream errors=new PrintStream(err,true,StandardCharsets.UTF_8)) {
+			ErrorReporter reporter=new ErrorReporter(errors);
+			Program program=Program.compile(source,reporter);
+			if(program!=null) {
+				Interpreter interpreter=new Interpreter(reporter,OutputSink.to(out));
+				interpreter.engine=engine;
+				if(coverage!=null) interpreter.cover(coverage);
+				if(!expected.breakpoints.isEmpty()) interpreter.debug(debugger(interpreter,expected.breakpoints));
+				interpreter.cancellation.timeout(timeoutMillis);
+				try {
+					interpreter.interpret(program);
+				}finally {
+					interpreter.cancellation.finish();
+				}
+			}
+		}catch(RuntimeException|StackOverflowError e) {
+			//The interpreter itself broke, that's a failure of the test and not of the run.
+			err.writeBytes(("Interpreter crashed: "+e+"\n").getBytes(StandardCharsets.UTF_8));
+		}
+		long nanos=System.nanoTime()-start;
+		List<String> failures=expected.check(lines(out),lines(err));
+		if(coverage!=null) expected.checkHits(coverage.lineHits(),failures);
+		return new Result(test,nanos,failures);
+	}
+	//Prints every stop into the script's output, through the interpreter's sink so it lands in order with the prints.
+	private static Debugger debugger(Interpreter interpreter,List<Integer> breakpoints) {
+		Debugger debugger=new Debugger(suspension->{
+			interpreter.out.println("stop at line "+suspension.line+" in "+String.join(", ",suspension.stack()));
+			return Debugger.Resume.CONTINUE;
+		});
+		for(int line:breakpoints) {
+			debugger.setBreakpoint(line);
+		}
+		return debugger;
+	}
+	private static List<String> lines(ByteArrayOutputStream stream) {
+		String text=stream.toString(StandardCharsets.UTF_8);
+		if(text.isEmpty()) return List.of();
+		//Every line ends with a newline, split drops the empty string after the last one.
+		return List.of(text.split("\r?\n"));
+	}
+	//Prints the failures, then the slowest tests, returns how many failed.
+	static int report(List<Result> results,int slowest,PrintStream out) {
+		int failed=0;
+		for(Result result:results) {
+			if(result.failures.isEmpty()) continue;
+			failed++;
+			out.println("FAIL "+result.test);
+			for(String failure:result.failures) {
+				out.println("     "+failure);
+			}
+		}
+		List<Result> bySpeed=new ArrayList<>(results);
+		bySpeed.sort(Comparator.comparingLong((Result result)->result.nanos).reversed());
+		if(slowest>0 && !bySpeed.isEmpty()) {
+			out.println("Slowest tests:");
+			for(Result result:bySpeed.subList(0,Math.min(slowest,bySpeed.size()))) {
+				out.printf("%8.1f ms  %s%n",result.nanos/1e6,result.test);
+			}
+		}
+		return failed;
+	}
+
+	static final class Result {
+		final Path test;
+		final long nanos;
+		//Empty if the test passed.
+		final List<String> failures;
+
+		Result(Path test,long nanos,List<String> failures){
+			this.test=test;
+			this.nanos=nanos;
+			this.failures=failures;
+		}
+	}
+
+	//What a test script says it should print and report.
+	private static final class Expectations {
+		private final List<String> output=new ArrayList<>();
+		private final List<String> errors=new ArrayList<>();
+		private final List<Integer> breakpoints=new ArrayList<>();
+		private final Map<Integer,Long> hits=new TreeMap<>();
+		private String runtimeError;
+		private int runtimeErrorLine;
+
+		Expectations(String source){
+			String[] lines=source.split("\r?\n",-1);
+			for(int i=0;i<lines.length;i++) {
+				int line=i+1;
+				if(BREAKPOINT.matcher(lines[i]).find()) {
+					breakpoints.add(line);
+					continue;
+				}
+				Matcher matcher=EXPECTED_HITS.matcher(lines[i]);
+				if(matcher.find()) {
+					hits.put(line,Long.parseLong(matcher.group(1)));
+					continue;
+				}
+				matcher=EXPECTED_OUTPUT.matcher(lines[i]);
+				if(matcher.find()) {
+					output.add(matcher.group(1));
+					continue;
+				}
+				matcher=EXPECTED_RUNTIME_ERROR.matcher(lines[i]);
+				if(matcher.find()) {
+					runtimeError=matcher.group(1);
+					runtimeErrorLine=line;
+					continue;
+				}
+				matcher=EXPECTED_ERROR_AT_LINE.matcher(lines[i]);
+				if(matcher.find()) {
+					errors.add("[line "+matcher.group(1)+"] "+matcher.group(2));
+					continue;
+				}
+				matcher=EXPECTED_ERROR.matcher(lines[i]);
+				if(matcher.find()) {
+					errors.add("[line "+line+"] "+matcher.group(1));
+				}
+			}
+		}
+		List<String> check(List<String> actualOutput,List<String> actualErrors) {
+			List<String> failures=new ArrayList<>();
+			if(runtimeError!=null) {
+				checkRuntimeError(actualErrors,failures);
+			}else if(!errors.isEmpty()) {
+				actualErrors=normalized(actualErrors);
+				for(String error:errors) {
+					if(!actualErrors.contains(error)) failures.add("Missing expected error: "+error);
+				}
+				for(String error:actualErrors) {
+					if(!errors.contains(error)) failures.add("Unexpected error: "+error);
+				}
+			}else {
+				for(String error:actualErrors) {
+					failures.add("Unexpected error: "+error);
+				}
+			}
+			for(int i=0;i<Math.max(output.size(),actualOutput.size());i++) {
+				if(i>=output.size()) {
+					failures.add("Got output '"+actualOutput.get(i)+"' when none was expected.");
+				}else if(i>=actualOutput.size()) {
+					failures.add("Missing expected output '"+output.get(i)+"'.");
+				}else if(!output.get(i).equals(actualOutput.get(i))) {
+					failures.add("Expected output '"+output.get(i)+"' and got '"+actualOutput.get(i)+"'.");
+				}
+			}
+			return failures;
+		}
+		//A line the coverage has no statement on counts as never run.
+		private void checkHits(Map<Integer,Long> actualHits,List<String> failures) {
+			for(Map.Entry<Integer,Long> entry:hits.entrySet()) {
+				long actual=actualHits.getOrDefault(entry.getKey(),0L);
+				if(actual!=entry.getValue()) {
+					failures.add("Expected line "+entry.getKey()+" to run "+entry.getValue()+" times and it ran "+actual+".");
+				}
+			}
+		}
+		private static List<String> normalized(List<String> errors) {
+			List<String> normalized=new ArrayList<>();
+			for(String error:errors) {
+				Matcher matcher=COMPILE_ERROR.matcher(error);
+				normalized.add(matcher.matches()?"[line "+matcher.group(1)+"] "+matcher.group(2):error);
+			}
+			return normalized;
+		}
+		//The reporter writes the message, then [lineN], then the Lox trace.
+		private void checkRuntimeError(List<String> actualErrors,List<String> failures) {
+			if(actualErrors.isEmpty()) {
+				failures.add("Expected runtime error '"+runtimeError+"' and got none.");
+				return;
+			}
+			if(!actualErrors.get(0).equals(runtimeError)) {
+				failures.add("Expected runtime error '"+runtimeError+"' and got '"+actualErrors.get(0)+"'.");
+				return;
+			}
+			Matcher matcher=actualErrors.size()>1?RUNTIME_ERROR_LINE.matcher(actualErrors.get(1)):null;
+			if(matcher==null || !matcher.matches()) {
+				failures.add("Expected a line number after the runtime error.");
+			}else if(Integer.parseInt(matcher.group(1))!=runtimeErrorLine) {
+				failures.add("Expected runtime error on line "+runtimeErrorLine+" but was on line "+matcher.group(1)+".");
+			}
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package com.craftinginterpreters.jlox;
+
+//The time module. clock() is also a global, it predates modules.
+final class TimeModule {
+	private TimeModule() {}
+
+	//Seconds since the epoch.
+	@LoxNative static double clock() {return (double)System.currentTimeMillis()/1000.0;}
+	@LoxNative static long millis() {return System.currentTimeMillis();}
+	//Monotonic, only good for measuring elapsed time.
+	@LoxNative static long nanos() {return System.nanoTime();}
+}
@@ -1,17 +1,29 @@
 package com.craftinginterpreters.jlox;
 
+//The AST keeps the tokens of names, operators and keywords for as long as the program lives, so a token is only
+//its type, lexeme and line. The Scanner hands out one token per lexeme and line and one String per lexeme.
 class Token {
 	final TokenType type;
 	final String lexeme;
-	final Object literal;
 	final int line;
-	Token(TokenType type,String lexeme,Object literal, int line){
+	Token(TokenType type,String lexeme, int line){
 		this.type=type;
 		this.lexeme=lexeme;
-		this.literal=literal;
 		this.line=line;
 	}
 	public String toString() {
-		return type+ " " + lexeme+ " " + literal;
-	} 
-}
\ No newline at end of file
+		return type+ " " + lexeme;
+	}
+
+	//A number or string, the Parser copies its value into an Expr.Literal and drops it.
+	static final class Literal extends Token {
+		final Object value;
+		Literal(TokenType type,String lexeme,Object value,int line){
+			super(type,lexeme,line);
+			this.value=value;
+		}
+		public String toString() {
+			return type+ " " + lexeme+ " " + value;
+		}
+	}
+}
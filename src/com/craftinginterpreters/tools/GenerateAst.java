@@ -34,11 +34,11 @@ public class GenerateAst{
 //				"Class		: Token name, Expr.Variable superclass, List<Stmt.Function> methods",	
 //				"Expression : Expr expression",
 //				"Function	: Token name, List<Token> params, "+"List<Stmt> body",
-//				"If			: Expr condition, Stmt thenBranch,"+" Stmt elseBranch",		
-//				"Print		: Expr expression",
+//				"If			: Token keyword, Expr condition, Stmt thenBranch,"+" Stmt elseBranch",		
+//				"Print		: Token keyword, Expr expression",
 //				"Return		: Token keyword, Expr value",
 //				"Var		: Token name, Expr initializer"	,
-//				"While		: Expr condition, Stmt body"
+//				"While		: Token keyword, Expr condition, Stmt body"
 //				));
 	}
 	private static void defineAst(
@@ -6,4 +6,10 @@
  *
  */
 module jlox {
-}
\ No newline at end of file
+	requires jdk.jfr;
+	requires java.management;
+	requires java.scripting;
+	//Only for the InterpreterMetricsMXBean interface, JMX has to reach it reflectively.
+	exports com.craftinginterpreters.jlox to java.management;
+	provides javax.script.ScriptEngineFactory with com.craftinginterpreters.jlox.LoxScriptEngineFactory;
+}